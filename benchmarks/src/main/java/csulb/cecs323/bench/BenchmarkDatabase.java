@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CustomerOrders;
+import csulb.cecs323.app.OrderService;
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Orders;
+import csulb.cecs323.model.Products;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A throwaway in-memory Derby database for the benchmarks to run against.  The tables are
+ * generated from the entities, and then filled with made up customers, products and orders.
+ */
+public class BenchmarkDatabase {
+    /** Makes every database name unique, so that trials in the same JVM do not share data. */
+    private static final AtomicLong DATABASES = new AtomicLong();
+
+    /** How many rows to persist between flushes while filling the tables. */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    /** The factory for the in-memory database. */
+    private final EntityManagerFactory factory;
+
+    /** The customer_id of every customer. */
+    private final List<Long> customerIds = new ArrayList<>();
+
+    /** The UPC of every product. */
+    private final List<String> upcs = new ArrayList<>();
+
+    /** Every order that was placed while filling the tables. */
+    private final List<Orders> orders = new ArrayList<>();
+
+    /**
+     * Creates the database, using the CustomerOrders persistence unit, and fills it.
+     * @param customers     How many customers to create.
+     * @param products      How many products to create.
+     * @param orderCount    How many orders to place.
+     * @param linesPerOrder How many lines each order has.  No more than the number of products.
+     */
+    public BenchmarkDatabase(int customers, int products, int orderCount, int linesPerOrder) {
+        this("CustomerOrders", customers, products, orderCount, linesPerOrder);
+    }
+
+    /**
+     * Creates the database and fills it.
+     * @param unitName      The persistence unit, which picks the connection pool and statement cache settings.
+     * @param customers     How many customers to create.
+     * @param products      How many products to create.
+     * @param orderCount    How many orders to place.
+     * @param linesPerOrder How many lines each order has.  No more than the number of products.
+     */
+    public BenchmarkDatabase(String unitName, int customers, int products, int orderCount, int linesPerOrder) {
+        factory = open(unitName, "jdbc:derby:memory:bench" + DATABASES.incrementAndGet() + ";create=true", Map.of());
+        EntityManager manager = factory.createEntityManager();
+        CustomerOrders customerOrders = new CustomerOrders(manager);
+
+        List<Customers> newCustomers = new ArrayList<>();
+        for (int i = 0; i < customers; i++) {
+            newCustomers.add(customer(i));
+        } // end of for loop
+        List<Products> newProducts = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            // Plenty of stock, so that placing orders never runs out.
+            newProducts.add(new Products(upc(i), "Product " + i, "Maker " + (i % 50), "M-" + i,
+                    1 + (i % 100), Integer.MAX_VALUE / 2));
+        } // end of for loop
+        manager.getTransaction().begin();
+        customerOrders.createEntity(newCustomers, FLUSH_INTERVAL);
+        customerOrders.createEntity(newProducts, FLUSH_INTERVAL);
+        manager.getTransaction().commit();
+        manager.close();
+        for (Customers customer : newCustomers) {
+            customerIds.add(customer.getCustomer_id());
+        } // end of for loop
+        for (Products product : newProducts) {
+            upcs.add(product.getUPC());
+        } // end of for loop
+
+        OrderService orderService = new OrderService(factory);
+        LocalDateTime date = LocalDateTime.of(2021, 1, 1, 0, 0);
+        for (int i = 0; i < orderCount; i++) {
+            orders.add(orderService.placeOrder(customerIds.get(i % customers), date.plusMinutes(i),
+                    lines(i, linesPerOrder), "Seller " + (i % 10)));
+        } // end of for loop
+    } // end of BenchmarkDatabase()
+
+    /**
+     * Opens a factory for a persistence unit on another database, with the tables generated
+     * from the entities.
+     * @param unitName      The name of the persistence unit.
+     * @param url           The JDBC URL of the database.
+     * @param properties    Any other persistence unit properties to override.
+     * @return              The factory.
+     */
+    public static EntityManagerFactory open(String unitName, String url, Map<String, Object> properties) {
+        Map<String, Object> overrides = new HashMap<>(properties);
+        overrides.put("javax.persistence.jdbc.url", url);
+        overrides.put("javax.persistence.schema-generation.database.action", "drop-and-create");
+        return Persistence.createEntityManagerFactory(unitName, overrides);
+    } // end of open method
+
+    /**
+     * Makes up a customer whose name and phone are unique for each n.
+     * @param n     Which customer this is.
+     * @return      The new, unsaved, customer.
+     */
+    public static Customers customer(long n) {
+        return new Customers("Last" + n, "First" + n, n + " Bellflower Blvd", "90840",
+                String.format("562-%07d", n));
+    }
+
+    /**
+     * @param n     Which product this is.
+     * @return      The UPC for the nth product.
+     */
+    public static String upc(int n) {
+        return String.format("%012d", n);
+    }
+
+    /**
+     * Picks the lines for an order: lineCount products in a row, starting at a different
+     * product for each order, one of each.
+     * @param n         Which order this is.
+     * @param lineCount How many lines the order has.
+     * @return          Quantity for each UPC.
+     */
+    public Map<String, Integer> lines(int n, int lineCount) {
+        Map<String, Integer> lines = new LinkedHashMap<>();
+        for (int i = 0; i < lineCount; i++) {
+            lines.put(upcs.get((n + i) % upcs.size()), 1);
+        } // end of for loop
+        return lines;
+    } // end of lines method
+
+    public EntityManagerFactory getFactory() {
+        return factory;
+    }
+
+    public List<Long> getCustomerIds() {
+        return customerIds;
+    }
+
+    public List<String> getUpcs() {
+        return upcs;
+    }
+
+    public List<Orders> getOrders() {
+        return orders;
+    }
+
+    /**
+     * Closes the factory.  The in-memory database goes away with the JVM.
+     */
+    public void close() {
+        factory.close();
+    }
+} // End of BenchmarkDatabase class
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.OrderService;
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Orders;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A multi-threaded load test that compares the persistence profiles: the single-user
+ * CustomerOrders unit and the pooled, statement-caching CustomerOrdersServer unit.  Eight
+ * threads share one EntityManagerFactory, the way that a server would, and each either places
+ * orders or looks customers up by primary key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ConcurrentOrderBenchmark {
+    /** The persistence unit, which decides the connection pool and statement cache settings. */
+    @Param({"CustomerOrders", "CustomerOrdersServer"})
+    public String unit;
+
+    /** Number of customers, and of products. */
+    private static final int TABLE_SIZE = 10_000;
+
+    /** Number of lines in each order placed. */
+    private static final int LINE_COUNT = 3;
+
+    private BenchmarkDatabase database;
+
+    private OrderService orderService;
+
+    /** Gives each new order a unique date. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase(unit, TABLE_SIZE, TABLE_SIZE, 0, LINE_COUNT);
+        orderService = new OrderService(database.getFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Orders placeOrder() {
+        long n = sequence.incrementAndGet();
+        List<Long> ids = database.getCustomerIds();
+        return orderService.placeOrder(ids.get((int) (n % ids.size())),
+                LocalDateTime.of(2030, 1, 1, 0, 0).plusSeconds(n),
+                database.lines((int) (n % TABLE_SIZE), LINE_COUNT), "Benchmark");
+    }
+
+    /** A short-lived EntityManager per call, the way a request handler would use one. */
+    @Benchmark
+    public Customers findCustomer() {
+        List<Long> ids = database.getCustomerIds();
+        EntityManager manager = database.getFactory().createEntityManager();
+        try {
+            return manager.createNamedQuery("ReturnCustomer", Customers.class)
+                    .setParameter(1, ids.get(ThreadLocalRandom.current().nextInt(ids.size())))
+                    .getSingleResult();
+        } finally {
+            manager.close();
+        }
+    }
+} // End of ConcurrentOrderBenchmark class
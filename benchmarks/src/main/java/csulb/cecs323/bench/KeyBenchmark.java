@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.bench;
+
+import csulb.cecs323.model.Order_lines_pk;
+import csulb.cecs323.model.Orders_pk;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times equals and hashCode on the composite primary key classes, which the persistence
+ * provider calls on every identity map lookup.  Each key is compared with an equal key that
+ * is a different object, since that is the case that an identity map has to get right.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyBenchmark {
+    private Orders_pk order;
+    private Orders_pk sameOrder;
+    private Order_lines_pk line;
+    private Order_lines_pk sameLine;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime date = LocalDateTime.of(2021, 4, 7, 10, 30);
+        order = new Orders_pk(42, date);
+        sameOrder = new Orders_pk(42, LocalDateTime.of(2021, 4, 7, 10, 30));
+        line = new Order_lines_pk(order, new String("000000001234"));
+        sameLine = new Order_lines_pk(sameOrder, new String("000000001234"));
+    }
+
+    @Benchmark
+    public int ordersPkHashCode() {
+        return order.hashCode();
+    }
+
+    @Benchmark
+    public boolean ordersPkEquals() {
+        return order.equals(sameOrder);
+    }
+
+    @Benchmark
+    public int orderLinesPkHashCode() {
+        return line.hashCode();
+    }
+
+    @Benchmark
+    public boolean orderLinesPkEquals() {
+        return line.equals(sameLine);
+    }
+
+    /**
+     * A map from order line keys to values, the way an identity map holds the objects of a
+     * large persistence context.  Lookups use equal copies of the keys, never the keys themselves.
+     */
+    @State(Scope.Benchmark)
+    public static class IdentityMap {
+        /** Number of keys in the map. */
+        @Param({"10000", "1000000"})
+        public int size;
+
+        Map<Order_lines_pk, Object> map;
+        Order_lines_pk[] probes;
+
+        @Setup
+        public void setUp() {
+            LocalDateTime start = LocalDateTime.of(2021, 1, 1, 0, 0);
+            map = new HashMap<>(size * 2);
+            probes = new Order_lines_pk[size];
+            for (int i = 0; i < size; i++) {
+                LocalDateTime date = start.plusSeconds(i);
+                String upc = BenchmarkDatabase.upc(i % 1000);
+                map.put(new Order_lines_pk(new Orders_pk(i % 5000, date), upc), Boolean.TRUE);
+                probes[i] = new Order_lines_pk(new Orders_pk(i % 5000, LocalDateTime.from(date)), new String(upc));
+            } // end of for loop
+        }
+    }
+
+    @Benchmark
+    public Object identityMapLookup(IdentityMap identityMap) {
+        Order_lines_pk[] probes = identityMap.probes;
+        return identityMap.map.get(probes[ThreadLocalRandom.current().nextInt(probes.length)]);
+    }
+} // End of KeyBenchmark class
@@ -0,0 +1,180 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.bench;
+
+import csulb.cecs323.app.CustomerOrders;
+import csulb.cecs323.app.OrderService;
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Order_lines;
+import csulb.cecs323.model.Orders;
+import csulb.cecs323.model.Orders_pk;
+import csulb.cecs323.model.Products;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the persistence hot paths of the application against an in-memory Derby database.
+ * <p>
+ * tableSize is the number of customers and of products, so lookups can be compared as the
+ * tables grow.  lineCount is the number of lines in each order, both the orders that are
+ * read back and the ones that are placed.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    /** Number of customers, and of products. */
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    /** Number of lines in each order. */
+    @Param({"1", "10"})
+    public int lineCount;
+
+    /** Number of orders placed before the benchmarks start. */
+    private static final int ORDERS = 1000;
+
+    /** How many customers each call to the createEntity benchmark inserts. */
+    private static final int INSERT_BATCH = 100;
+
+    private BenchmarkDatabase database;
+
+    private OrderService orderService;
+
+    /** Gives the orders and customers created during the benchmarks unique keys. */
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase(tableSize, tableSize, ORDERS, lineCount);
+        orderService = new OrderService(database.getFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    /** Each benchmark thread has its own EntityManager, as it must. */
+    @State(Scope.Thread)
+    public static class Session {
+        EntityManager manager;
+        CustomerOrders customerOrders;
+
+        @Setup(Level.Trial)
+        public void setUp(PersistenceBenchmark benchmark) {
+            manager = benchmark.database.getFactory().createEntityManager();
+            customerOrders = new CustomerOrders(manager);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            manager.close();
+        }
+    }
+
+    /**
+     * Every order and order line already loaded into one EntityManager, so that finding an
+     * order by its key is answered from a large persistence context.
+     */
+    @State(Scope.Thread)
+    public static class LargeContext {
+        EntityManager manager;
+
+        @Setup(Level.Trial)
+        public void setUp(PersistenceBenchmark benchmark) {
+            manager = benchmark.database.getFactory().createEntityManager();
+            manager.createQuery("SELECT ol FROM Order_lines ol", Order_lines.class).getResultList();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            manager.close();
+        }
+    }
+
+    /** An order that is already managed, looked up with a new, equal, Orders_pk. */
+    @Benchmark
+    public Orders findInLargeContext(LargeContext context) {
+        List<Orders> orders = database.getOrders();
+        Orders order = orders.get(ThreadLocalRandom.current().nextInt(orders.size()));
+        return context.manager.find(Orders.class,
+                new Orders_pk(order.getCustomer().getCustomer_id(), order.getOrder_date()));
+    }
+
+    /** A product through getProduct, which reads through the product catalog. */
+    @Benchmark
+    public Products getProduct(Session session) {
+        return session.customerOrders.getProduct(randomUpc());
+    }
+
+    /** A product through the ReturnProduct native query, which is what getProduct used to run. */
+    @Benchmark
+    public Products getProductQuery(Session session) {
+        return session.manager.createNamedQuery("ReturnProduct", Products.class)
+                .setParameter(1, randomUpc()).getSingleResult();
+    }
+
+    @Benchmark
+    public Customers getCustomer(Session session) {
+        List<Long> ids = database.getCustomerIds();
+        return session.customerOrders.getCustomer(
+                String.valueOf(ids.get(ThreadLocalRandom.current().nextInt(ids.size()))));
+    }
+
+    @Benchmark
+    public List<Order_lines> getOrderLines(Session session) {
+        List<Orders> orders = database.getOrders();
+        return session.customerOrders.getOrderLines(orders.get(ThreadLocalRandom.current().nextInt(orders.size())));
+    }
+
+    /** A whole order: the order, lineCount lines, and the stock taken out for each one. */
+    @Benchmark
+    public Orders placeOrder() {
+        long n = sequence.incrementAndGet();
+        List<Long> ids = database.getCustomerIds();
+        Map<String, Integer> lines = database.lines((int) (n % tableSize), lineCount);
+        return orderService.placeOrder(ids.get((int) (n % ids.size())),
+                LocalDateTime.of(2030, 1, 1, 0, 0).plusSeconds(n), lines, "Benchmark");
+    }
+
+    /** INSERT_BATCH new customers through createEntity, in one transaction. */
+    @Benchmark
+    @OperationsPerInvocation(INSERT_BATCH)
+    public void createEntity(Session session) {
+        List<Customers> customers = new ArrayList<>(INSERT_BATCH);
+        for (int i = 0; i < INSERT_BATCH; i++) {
+            customers.add(BenchmarkDatabase.customer(tableSize + sequence.incrementAndGet()));
+        } // end of for loop
+        session.manager.getTransaction().begin();
+        session.customerOrders.createEntity(customers, INSERT_BATCH);
+        session.manager.getTransaction().commit();
+    }
+
+    private String randomUpc() {
+        List<String> upcs = database.getUpcs();
+        return upcs.get(ThreadLocalRandom.current().nextInt(upcs.size()));
+    }
+} // End of PersistenceBenchmark class
@@ -0,0 +1,366 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Products;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Loads Customers and Products from CSV files in bulk.
+ * <p>
+ * The first line of the file is a header naming the columns, using the same names as the
+ * entity attributes (for instance last_name,first_name,street,zip,phone for Customers).
+ * The columns can come in any order.  Values may be quoted with double quotes if they
+ * contain a comma, and a doubled double quote inside of a quoted value stands for one.
+ * </p>
+ * <p>
+ * Rows are persisted batchSize at a time.  After each batch the EntityManager is flushed,
+ * which EclipseLink sends as a single JDBC batch (see eclipselink.jdbc.batch-writing in
+ * persistence.xml), the transaction is committed and the persistence context is cleared.
+ * Memory use therefore depends on the batch size and not on the size of the file.
+ * </p>
+ * <p>
+ * A customer with the same first name, last name and phone number as one who is already there
+ * breaks the unique constraint, which fails the commit and ends the import.  Given a
+ * DuplicateCustomerFilter, importCustomers skips those customers instead, before they are
+ * persisted, and counts them.
+ * </p>
+ */
+public class BulkImporter {
+    /** Where each batch gets its EntityManager. */
+    private final EntityManagerFactory factory;
+
+    /** How many rows to write in each transaction. */
+    private final int batchSize;
+
+    /** Where imported customers are added once they are committed, or null. */
+    private final CustomerIndex customerIndex;
+
+    /** Turns away customers who are already there, or null. */
+    private final DuplicateCustomerFilter duplicateFilter;
+
+    /** Where imported products are added once they are committed, or null. */
+    private final ProductSearch productSearch;
+
+    /** How often the duplicate filter built by main has to check a new customer in the database. */
+    private static final double DUPLICATE_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final Logger LOGGER = Logger.getLogger(BulkImporter.class.getName());
+
+    /**
+     * Constructor for the BulkImporter.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param batchSize How many rows to persist between each flush, commit and clear.
+     */
+    public BulkImporter(EntityManagerFactory factory, int batchSize) {
+        this(factory, batchSize, null, null, null);
+    } // end of BulkImporter()
+
+    /**
+     * Constructor for a BulkImporter that skips duplicate customers and keeps a CustomerIndex
+     * and a ProductSearch up to date.
+     * @param factory           The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param batchSize         How many rows to persist between each flush, commit and clear.
+     * @param customerIndex     Where to add each batch of customers once it is committed, or null.
+     * @param duplicateFilter   Checks each customer before it is persisted, or null.
+     * @param productSearch     Where to add each batch of products once it is committed, or null.
+     */
+    public BulkImporter(EntityManagerFactory factory, int batchSize, CustomerIndex customerIndex,
+                        DuplicateCustomerFilter duplicateFilter, ProductSearch productSearch) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size has to be greater than 0");
+        } // end of if statement
+        this.factory = factory;
+        this.batchSize = batchSize;
+        this.customerIndex = customerIndex;
+        this.duplicateFilter = duplicateFilter;
+        this.productSearch = productSearch;
+    } // end of BulkImporter()
+
+    /**
+     * Imports customers.  Required columns: last_name, first_name, street, zip and phone.
+     * The customer_id is generated.  If there is a DuplicateCustomerFilter, customers that are
+     * already there, or that come up twice in the input, are skipped.  If there is a
+     * CustomerIndex, each batch of customers is added to it once it has been committed.
+     * @param in    The CSV input, header line first.
+     * @return      The number of customers imported, not counting the ones skipped.
+     * @throws IOException  If the input cannot be read.
+     */
+    public long importCustomers(Reader in) throws IOException {
+        long rejected = duplicateFilter == null ? 0 : duplicateFilter.getRejected();
+        long imported = importRows(in, row -> {
+                    Customers customer = new Customers(
+                            required(row, "last_name"),
+                            required(row, "first_name"),
+                            required(row, "street"),
+                            required(row, "zip"),
+                            required(row, "phone"));
+                    if (duplicateFilter != null && !duplicateFilter.admit(customer)) {
+                        return null;
+                    } // end of if statement
+                    return customer;
+                },
+                customer -> {
+                    if (customerIndex != null) {
+                        customerIndex.add(customer);
+                    } // end of if statement
+                },
+                customer -> {
+                    // Whether the batch was committed or not, the database now answers for it.
+                    if (duplicateFilter != null) {
+                        duplicateFilter.committed(customer);
+                    } // end of if statement
+                });
+        if (duplicateFilter != null) {
+            LOGGER.info("Skipped " + (duplicateFilter.getRejected() - rejected) +
+                    " duplicate customers without trying to insert them; " + duplicateFilter);
+        } // end of if statement
+        return imported;
+    } // end of importCustomers method
+
+    /**
+     * Imports products.  Required columns: UPC, prod_name, mfgr, model, unit_list_price and
+     * units_in_stock.  If there is a ProductSearch, each batch of products is added to it once
+     * it has been committed.
+     * @param in    The CSV input, header line first.
+     * @return      The number of products imported.
+     * @throws IOException  If the input cannot be read.
+     */
+    public long importProducts(Reader in) throws IOException {
+        return importRows(in, row -> new Products(
+                required(row, "UPC"),
+                required(row, "prod_name"),
+                required(row, "mfgr"),
+                required(row, "model"),
+                Double.parseDouble(required(row, "unit_list_price")),
+                Integer.parseInt(required(row, "units_in_stock"))),
+                product -> {
+                    if (productSearch != null) {
+                        productSearch.put(product);
+                    } // end of if statement
+                },
+                product -> { });
+    } // end of importProducts method
+
+    /**
+     * Reads the header and then every row of the input, turning each row into an entity and
+     * persisting them batchSize at a time.
+     * @param in        The CSV input.
+     * @param toEntity  Builds an entity from a row, given as a map from column name to value,
+     *                  or returns null to skip the row.
+     * @param committed Called with each entity once its batch has been committed.
+     * @param finished  Called with each entity once its batch has been committed or has failed,
+     *                  including one that failed before it could be written.
+     * @return          The number of rows imported.
+     * @throws IOException  If the input cannot be read.
+     */
+    private <E> long importRows(Reader in, Function<Map<String, String>, E> toEntity, Consumer<E> committed,
+                                Consumer<E> finished) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        String header = reader.readLine();
+        if (header == null) {
+            return 0;
+        } // end of if statement
+        List<String> columns = parseLine(header);
+
+        long imported = 0;
+        long started = System.nanoTime();
+        EntityManager manager = factory.createEntityManager();
+        List<E> pending = new ArrayList<>(batchSize);
+        try {
+            manager.getTransaction().begin();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                } // end of if statement
+                List<String> values = parseLine(line);
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < columns.size() && i < values.size(); i++) {
+                    row.put(columns.get(i), values.get(i));
+                } // end of for loop
+                E entity = toEntity.apply(row);
+                if (entity == null) {
+                    continue;
+                } // end of if statement
+                manager.persist(entity);
+                pending.add(entity);
+                imported++;
+                if (pending.size() == batchSize) {
+                    endBatch(manager, pending, committed, finished);
+                    manager.getTransaction().begin();
+                    LOGGER.fine("Imported " + imported + " rows");
+                } // end of if statement
+            } // end of while loop
+            endBatch(manager, pending, committed, finished);
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            } // end of if statement
+            manager.close();
+            // A batch that was cut short, for instance by a row with a missing column.
+            pending.forEach(finished);
+        } // end of try/finally
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        LOGGER.info("Imported " + imported + " rows in " + millis + " ms (" +
+                (imported * 1000 / millis) + " rows/s)");
+        return imported;
+    } // end of importRows method
+
+    /**
+     * Writes out and commits the current batch, then empties the persistence context.
+     * @param manager   The EntityManager holding the batch.
+     * @param pending   The entities in the batch.  Emptied whether or not they were committed.
+     * @param committed Called with each entity in the batch after the commit.
+     * @param finished  Called with each entity in the batch after the commit, or after it failed.
+     */
+    private <E> void endBatch(EntityManager manager, List<E> pending, Consumer<E> committed, Consumer<E> finished) {
+        try {
+            manager.flush();
+            manager.getTransaction().commit();
+            manager.clear();
+            pending.forEach(committed);
+        } finally {
+            pending.forEach(finished);
+            pending.clear();
+        } // end of try/finally
+    } // end of endBatch method
+
+    /**
+     * Gets a value that every row has to have.
+     * @param row       The row, as a map from column name to value.
+     * @param column    The name of the column.
+     * @return          The value of that column in this row.
+     */
+    private static String required(Map<String, String> row, String column) {
+        String value = row.get(column);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value for column " + column);
+        } // end of if statement
+        return value;
+    } // end of required method
+
+    /**
+     * Splits one line of CSV into its values.
+     * @param line  The line of text.
+     * @return      The values, with any quoting removed.
+     */
+    static List<String> parseLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                } // end of if/else statement
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            } // end of if/else statement
+        } // end of for loop
+        values.add(value.toString());
+        return values;
+    } // end of parseLine method
+
+    /**
+     * Builds a DuplicateCustomerFilter holding every customer in the database, with room for
+     * every line of the file that is about to be imported.
+     * @param manager   The EntityManager to read the customers and to check for duplicates with.
+     * @param file      The CSV file that is going to be imported.
+     * @return          The filter.
+     * @throws IOException  If the file cannot be read.
+     */
+    private static DuplicateCustomerFilter loadDuplicateFilter(EntityManager manager, Path file) throws IOException {
+        long started = System.nanoTime();
+        long lines;
+        try (Stream<String> stream = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines = stream.count();
+        } // end of try-with-resources
+        long existing = manager.createQuery("SELECT COUNT(c) FROM Customers c", Long.class).getSingleResult();
+        DuplicateCustomerFilter filter = new DuplicateCustomerFilter(Math.max(1, existing + lines),
+                DUPLICATE_FALSE_POSITIVE_RATE, DuplicateCustomerFilter.existsIn(manager));
+        try (Stream<Customers> customers = QueryStreams.stream(manager.createNamedQuery("CustomersAfter")
+                .setParameter("lastId", Long.MIN_VALUE)
+                .setHint(QueryHints.FETCH_GROUP_NAME, Customers.LIST), Customers.class, 1000)) {
+            filter.addAll(customers);
+        } // end of try-with-resources
+        manager.clear();
+        LOGGER.info("Loaded " + filter.size() + " customers into the duplicate filter in " +
+                (System.nanoTime() - started) / 1_000_000 + " ms");
+        return filter;
+    } // end of loadDuplicateFilter method
+
+    /**
+     * Command line entry point.
+     * @param args  Either "customers" or "products", followed by the path to the CSV file,
+     *              and optionally the batch size (1000 by default).
+     * @throws IOException  If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BulkImporter customers|products <file.csv> [batch size]");
+            return;
+        } // end of if statement
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrders");
+        try (Reader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            long count;
+            if (args[0].equalsIgnoreCase("products")) {
+                count = new BulkImporter(factory, batchSize).importProducts(in);
+            } else {
+                EntityManager lookup = factory.createEntityManager();
+                try {
+                    DuplicateCustomerFilter filter = loadDuplicateFilter(lookup, Paths.get(args[1]));
+                    count = new BulkImporter(factory, batchSize, null, filter, null).importCustomers(in);
+                    System.out.println("Skipped " + filter.getRejected() + " duplicate customers");
+                } finally {
+                    lookup.close();
+                } // end of try/finally
+            } // end of if/else statement
+            System.out.println("Imported " + count + " " + args[0]);
+        } finally {
+            factory.close();
+        } // end of try/finally
+    } // End of the main method
+} // End of BulkImporter class
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Customers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An in-memory index for finding customers as their name or phone number is typed in: "Sm"
+ * finds Smith, Smythe and Samantha Smalls, and "562-" every phone number in the 562 area code.
+ * <p>
+ * Each customer is entered under three terms: their last name, their first name, and the
+ * digits of their phone number.  Terms are normalized the same way as the searches are, to
+ * lower case letters and digits only, so "O'Brien" is entered as obrien and found by "o'b".
+ * The entries are kept in one sorted set, as the term followed by a NUL and the customer_id,
+ * so every entry that starts with a prefix lies in one contiguous range of the set, and a
+ * search is a seek to the start of that range followed by reading the first few entries in it.
+ * That takes microseconds, however many customers there are.
+ * </p>
+ * <p>
+ * The set is a ConcurrentSkipListSet, so customers can be added while other threads search.
+ * Loading many customers at once with addAll sorts their entries first: adding to a skip list
+ * in order touches the same few nodes over and over, and is several times faster than adding
+ * the same entries in the order the customers were read.
+ * Only the customer_id is kept for each customer, not their names; load the customers that
+ * are found from the EntityManager, which will usually find them in the shared cache.
+ * </p>
+ */
+public class CustomerIndex {
+    /** Every term of every customer, as the term, a NUL, and the customer_id. */
+    private final NavigableSet<String> entries = new ConcurrentSkipListSet<>();
+
+    /** Number of customers added. */
+    private final AtomicLong customers = new AtomicLong();
+
+    /** Separates the term from the customer_id in each entry.  Sorts before any letter or digit. */
+    private static final char SEPARATOR = '\u0000';
+
+    private static final Logger LOGGER = Logger.getLogger(CustomerIndex.class.getName());
+
+    /**
+     * Adds every customer in a stream, such as CustomerOrders.streamCustomers.  Only the names
+     * and phone numbers are used, so the list fetch group is enough.
+     * @param stream    The customers.  The caller closes it.
+     * @return          The number of customers added.
+     */
+    public long addAll(Stream<Customers> stream) {
+        long started = System.nanoTime();
+        long added = 0;
+        List<String> sorted = new ArrayList<>();
+        Iterator<Customers> iterator = stream.iterator();
+        while (iterator.hasNext()) {
+            addEntries(iterator.next(), sorted);
+            added++;
+        } // end of while loop
+        sorted.sort(null);
+        entries.addAll(sorted);
+        customers.addAndGet(added);
+        LOGGER.info("Indexed " + added + " customers in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        return added;
+    } // end of addAll method
+
+    /**
+     * Adds one customer.  Call this once the customer has been given their customer_id, that
+     * is, once they have been flushed or committed.
+     * @param customer  The customer to add.
+     */
+    public void add(Customers customer) {
+        addEntries(customer, entries);
+        customers.incrementAndGet();
+    } // end of add method
+
+    /**
+     * Adds the entries for one customer's last name, first name and phone number to a collection.
+     */
+    private static void addEntries(Customers customer, Collection<String> to) {
+        long id = customer.getCustomer_id();
+        if (id == 0) {
+            throw new IllegalArgumentException("The customer has not been given a customer_id yet");
+        } // end of if statement
+        addEntry(normalize(customer.getLast_name()), id, to);
+        addEntry(normalize(customer.getFirst_name()), id, to);
+        addEntry(digits(customer.getPhone()), id, to);
+    } // end of addEntries method
+
+    private static void addEntry(String term, long id, Collection<String> to) {
+        if (!term.isEmpty()) {
+            to.add(term + SEPARATOR + id);
+        } // end of if statement
+    } // end of addEntry method
+
+    /**
+     * Finds the customers with a last name, first name or phone number that starts with what
+     * has been typed in so far.
+     * @param prefix    What has been typed in.  It is normalized like the names, so "562-" is
+     *                  searched for as 562 and finds the phone numbers that start with it.
+     * @param limit     The most customer_ids to return.
+     * @return          The customer_ids found, each one once, in order of the term that matched.
+     */
+    public List<Long> search(String prefix, int limit) {
+        String term = normalize(prefix);
+        if (term.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        } // end of if statement
+        // The first entry that does not start with term is at or after term followed by the
+        // highest char there is.
+        Set<Long> found = new LinkedHashSet<>();
+        for (String entry : entries.subSet(term, true, term + Character.MAX_VALUE, false)) {
+            found.add(Long.parseLong(entry.substring(entry.indexOf(SEPARATOR) + 1)));
+            if (found.size() == limit) {
+                break;
+            } // end of if statement
+        } // end of for loop
+        return new ArrayList<>(found);
+    } // end of search method
+
+    /**
+     * @return  The number of customers that have been added.
+     */
+    public long size() {
+        return customers.get();
+    }
+
+    /**
+     * Puts a name, or a search, into the form that terms are kept in: lower case letters and
+     * digits only.
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        } // end of if statement
+        StringBuilder term = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } // end of if statement
+        } // end of for loop
+        return term.toString().toLowerCase(Locale.ROOT);
+    } // end of normalize method
+
+    /**
+     * @return  Just the digits of a phone number, so that 562-555-0100 and (562) 555 0100 are
+     *          the same term.
+     */
+    private static String digits(String phone) {
+        if (phone == null) {
+            return "";
+        } // end of if statement
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } // end of if statement
+        } // end of for loop
+        return digits.toString();
+    } // end of digits method
+
+    @Override
+    public String toString() {
+        return "CustomerIndex: " + customers.get() + " customers";
+    }
+} // End of CustomerIndex class
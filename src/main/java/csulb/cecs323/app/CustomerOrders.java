@@ -14,16 +14,22 @@ package csulb.cecs323.app;
 
 // Import all of the entity classes that we have written for this application.
 import csulb.cecs323.model.*;
-import org.eclipse.persistence.exceptions.DatabaseException;
+import org.eclipse.persistence.config.QueryHints;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * A simple application to demonstrate how to persist an object in JPA.
@@ -60,6 +66,61 @@ public class CustomerOrders {
     */
    private static final Logger LOGGER = Logger.getLogger(CustomerOrders.class.getName());
 
+   /**
+    * The most products that the product catalog will keep in memory at once.
+    */
+   static final int CATALOG_CAPACITY = 10_000;
+
+   /**
+    * How many rows streamCustomers and streamProducts fetch from the database at a time.
+    */
+   private static final int STREAM_PAGE_SIZE = 500;
+
+   /**
+    * Products are looked up over and over while taking an order, so rather than reading them
+    * from the database every time, they are read through this cache.
+    */
+   private final ProductCatalog catalog;
+
+   /**
+    * Takes the quantity of each order line out of stock, in a way that cannot oversell a product
+    * when other orders are being placed at the same time.
+    */
+   private final StockReservations reservations = new StockReservations();
+
+   /**
+    * Finds customers by the start of their name or phone number.  Read from the database the
+    * first time that it is needed, and added to as new customers are created.
+    */
+   private final CustomerIndex customerIndex = new CustomerIndex();
+
+   /**
+    * Turns away a new customer who is already there before trying to insert them.  Read from the
+    * database along with customerIndex.
+    */
+   private DuplicateCustomerFilter duplicateFilter;
+
+   /**
+    * Whether customerIndex and duplicateFilter have been read from the database yet.
+    */
+   private boolean customersLoaded = false;
+
+   /**
+    * How often duplicateFilter has to check a new customer in the database.
+    */
+   private static final double DUPLICATE_FALSE_POSITIVE_RATE = 0.01;
+
+   /**
+    * Full text search over the products, built from the product catalog the first time that
+    * it is needed.
+    */
+   private ProductSearch productSearch;
+
+   /**
+    * The most customers or products that a search will list.
+    */
+   private static final int SEARCH_LIMIT = 20;
+
    /**
     * The constructor for the CustomerOrders class.  All that it does is stash the provided EntityManager
     * for use later in the application.
@@ -67,9 +128,11 @@ public class CustomerOrders {
     */
    public CustomerOrders(EntityManager manager) {
       this.entityManager = manager;
+      this.catalog = new ProductCatalog(CATALOG_CAPACITY, this::loadProduct, this::getProductsPage);
    }
 
    public static void main(String[] args) {
+      DatabaseImage.installIfConfigured();
       LOGGER.fine("Creating EntityManagerFactory and EntityManager");
       EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrders");
       EntityManager manager = factory.createEntityManager();
@@ -93,6 +156,8 @@ public class CustomerOrders {
      * Prompts the user for to input an order. They are able to enter as a new or existing
      * customer. Then they select a product that is available and how much of that they want.
      * They'll be served a bill and then they can choose to accept it or not.
+     * Nothing is written to the database, and no stock is reserved, until they accept it, so
+     * no product row stays locked while they are still typing.
      */
     private void promptOrder(){
         Customers targetCustomer = completePromptCustomer(); // Customer requesting order
@@ -103,69 +168,132 @@ public class CustomerOrders {
 
         Orders createdOrder = new Orders(targetCustomer, targetDateTime, seller); // Order instance
 
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        this.entityManager.persist(createdOrder);
-
-        promptOrderLines(createdOrder, tx);
-
-        printOrder(createdOrder);
-
-        confirmOrder(tx);
+        List<Order_lines> orderLines = promptOrderLines(createdOrder); // Lines of the order, not persisted yet
+        if(orderLines == null){
+            System.out.println("Order cancelled.");
+            return;
+        } // end of if statement
 
+        if(confirmOrder(orderLines)){
+            if(placeOrder(createdOrder, orderLines)){
+                System.out.println("Order has been made, and you have been billed. Have a good day.");
+                printOrder(createdOrder);
+            } // end of if statement
+            // Whether it was committed or rolled back, the stock of the products that we cached
+            // no longer matches what is in the database.
+            catalog.invalidateAll();
+        } // end of if statement
+        else {
+            System.out.println("Order cancelled.");
+        } // end of else statement
     } //end of promptOrders
 
     /**
-     * Prints an order, line by line through order_lines
+     * Places an order that the user has accepted, in one transaction: the stock of every line
+     * is reserved, in UPC order, and then the order, its lines and the customer's summary are
+     * written and committed.  If a product has sold out since it was entered, nothing is written.
+     * @param order The order being placed
+     * @param orderLines The lines of the order, not persisted yet
+     * @return Whether the order was committed
+     */
+    private boolean placeOrder(Orders order, List<Order_lines> orderLines){
+        List<Order_lines> byUPC = new ArrayList<>(orderLines);
+        byUPC.sort(Comparator.comparing(line -> line.getProduct().getUPC()));
+        EntityTransaction tx = this.entityManager.getTransaction();
+        tx.begin();
+        try{
+            double totalCost = 0;
+            for(Order_lines line : byUPC){
+                // Take the units out of stock in the database, which only works if they are
+                // still there.  Someone else may have bought them since we read the product.
+                if(!reservations.reserve(this.entityManager, line.getProduct().getUPC(), line.getQuantity())){
+                    System.out.println("Sorry, " + line.getProduct().getProd_name() +
+                            " has just sold out. Order cancelled.");
+                    tx.rollback();
+                    return false;
+                } // end of if statement
+                totalCost += line.getQuantity() * line.getUnit_sale_price();
+            } // end of for loop
+            this.entityManager.persist(order);
+            for(Order_lines line : orderLines){
+                this.entityManager.persist(line);
+            } // end of for loop
+            OrderSummaries.orderPlaced(this.entityManager, order.getCustomer(), order.getOrder_date(), totalCost);
+            tx.commit();
+            return true;
+        } // end of try
+        catch(RuntimeException e){
+            if(!StockReservations.isLockConflict(e)){
+                throw e;
+            } // end of if statement
+            System.out.println("Sorry, another order for the same products got in the way. Order cancelled.");
+            return false;
+        } // end of catch
+        finally{
+            if(tx.isActive()){
+                tx.rollback();
+            } // end of if statement
+        } // end of finally
+    } // end of placeOrder method
+
+    /**
+     * Prints an order that has been placed, line by line through order_lines, with the total
+     * computed by the database
      * @param order Order to be printed
+     * @return The total cost of the order
      */
-    private void printOrder(Orders order){
+    private double printOrder(Orders order){
         List<Order_lines> orderLines = getOrderLines(order); // List of order_lines that make up an order
         System.out.println("\nUPC\t\t\t\tName\t\tUnit Cost\tQuantity\tSubtotal");
-        double totalCost = 0; // Total cost summed from each order line
         if(orderLines != null){
             for(Order_lines line: orderLines){
                 System.out.println(line);
-                totalCost += line.getQuantity() * line.getUnit_sale_price();
             } // end of for loop
         } // end of if statement
+        double totalCost = new SalesReports(this.entityManager).getOrderTotal(order); // Total cost of all order lines
         System.out.println("TOTAL\t\t\t\t\t\t\t\t\t\t\t\t\t$" + totalCost);
+        return totalCost;
     } // end of printOrder method
 
     /**
-     * Prompts the user to either confirm or cancel their order, which will be done as they request.
-     * @param tx EntityTransaction to commit or rollback to
+     * Shows the user the lines of their order with its total, and prompts them to either
+     * confirm or cancel it.
+     * @param orderLines The lines of the order, not persisted yet
+     * @return Whether the user accepted the order
      */
-    private void confirmOrder(EntityTransaction tx){
+    private boolean confirmOrder(List<Order_lines> orderLines){
         Scanner in = new Scanner(System.in); // Scanner for input
 
+        System.out.println("\nUPC\t\t\t\tName\t\tUnit Cost\tQuantity\tSubtotal");
+        double totalCost = 0; // Total cost of all order lines
+        for(Order_lines line: orderLines){
+            System.out.println(line);
+            totalCost += line.getQuantity() * line.getUnit_sale_price();
+        } // end of for loop
+        System.out.println("TOTAL\t\t\t\t\t\t\t\t\t\t\t\t\t$" + totalCost);
+
         System.out.println("\nAre you satisfied with this? Y/N");
-        boolean foundSatisfaction = false; // Whether or not customer wants to accept order
-        while(!foundSatisfaction){
+        while(true){
             String satisfaction = in.nextLine(); // User's input
             switch(satisfaction.toUpperCase()){
                 case "Y":
-                    System.out.println("Order has been made, and you have been billed. Have a good day.");
-                    foundSatisfaction = true;
-                    tx.commit();
-                    break;
+                    return true;
                 case "N":
-                    System.out.println("Order cancelled.");
-                    foundSatisfaction = true;
-                    tx.rollback();
-                    break;
+                    return false;
             } // end of switch statement
         } // end of while loop
     } // end of confirmOrder method
 
     /**
      * For a given order, it'll allow the customer to input lines of
-     * products they want.
+     * products they want.  The lines are only collected here; placeOrder writes them once the
+     * order has been accepted.  Entering the same product again adds to its line.
      * @param createdOrder The order the orderlines will be created for
-     * @param tx The entity transaction instance to persist into
+     * @return The lines of the order, or null if the customer cancelled it
      */
-    private void promptOrderLines(Orders createdOrder, EntityTransaction tx){
+    private List<Order_lines> promptOrderLines(Orders createdOrder){
         Scanner in = new Scanner(System.in); // Scanner for input
+        Map<String, Order_lines> orderLines = new LinkedHashMap<>(); // Lines entered so far, by UPC
         boolean orderDone = false; // Whether or not customer wants to finish order
         while(!orderDone){
             Products targetProduct = promptProduct(); // Product desired to add as orderLine
@@ -173,7 +301,9 @@ public class CustomerOrders {
                 orderDone = true;
             } // end of if statement
             else {
-                int quantityInStock = targetProduct.getUnits_in_stock(); // Quantity of product available
+                Order_lines existingLine = orderLines.get(targetProduct.getUPC()); // Line already entered for it, if any
+                int quantityInStock = targetProduct.getUnits_in_stock() -
+                        (existingLine == null ? 0 : existingLine.getQuantity()); // Quantity of product available
                 System.out.println("\nPlease enter the quantity desired: ");
                 int quantityDesired = in.nextInt(); // Quantity that customer wants
                 in.nextLine();
@@ -198,20 +328,18 @@ public class CustomerOrders {
                                     optionSelected = true;
                                     break;
                                 case "3": //cancel this order;
-                                    tx.rollback();
-                                    orderDone = true;
-                                    optionSelected = true;
-                                    System.out.println("Order cancelled.");
-                                    break;
+                                    return null;
                                 default:
                                     System.out.println("Error. Please enter 1, 2, or 3.");
                             } // end of switch statement
                         } // end of while loop
                     } // end of if(quantityDesired > quantityInStock)
-                    if(!orderDone && !cancelProduct){
-                        Order_lines createdOrderLine = new Order_lines(createdOrder, targetProduct, quantityDesired, targetProduct.getUnit_list_price());
-                        this.entityManager.persist(createdOrderLine);
-                        targetProduct.setUnits_in_stock(targetProduct.getUnits_in_stock() - createdOrderLine.getQuantity());
+                    if(!cancelProduct && quantityDesired > 0){
+                        if(existingLine != null){
+                            quantityDesired += existingLine.getQuantity();
+                        } // end of if statement
+                        orderLines.put(targetProduct.getUPC(), new Order_lines(createdOrder, targetProduct,
+                                quantityDesired, targetProduct.getUnit_list_price()));
                     } // end of if statement
                 } // end of if(quantityDesired > 0)
                 else {
@@ -219,6 +347,7 @@ public class CustomerOrders {
                 } // end of else statement
             } // end of else statement
         } // end of while loop
+        return new ArrayList<>(orderLines.values());
     } // end of promptOrderLines method
 
     /**
@@ -254,38 +383,43 @@ public class CustomerOrders {
     } // end of completePromptCustomer method
 
     /**
-     * Prompts the user to select a customer from a list of customers stored in the database
+     * Prompts the user to find their customer by the start of their name or phone number, and
+     * then to select it from the customers found
      * @return The user's desired customer, or null if desired to skip prompt (usually just repeats prompt from completePromptCustomer)
      */
     private Customers promptCustomer(){
         Scanner in = new Scanner(System.in); // Scanner for input
         boolean foundID = false;
         Customers targetCustomer = null;
+        if(getCustomerIndex().size() == 0){
+            System.out.println("No previously existing customers, please indicate as new customer");
+            return null;
+        } // end of if statement
         while(!foundID){
-            System.out.println("\nWhich customer are you? Select your customer ID from the following customers:");
-            List<Customers> customers = getCustomers();
-            if(customers != null){
-                for(Customers customer: getCustomers()){
-                    System.out.println("\t" + customer);
-                } // end of for loop
-                System.out.println("Type your customer id here (leave blank to skip): ");
-                String id = in.nextLine();
-                if(id.equals("")){
+            System.out.println("\nWhich customer are you? Type the start of your last name, first name or phone number (leave blank to skip):");
+            String search = in.nextLine();
+            if(search.trim().equals("")){
+                foundID = true;
+                continue;
+            } // end of if statement
+            List<Customers> customers = searchCustomers(search, SEARCH_LIMIT);
+            if(customers.isEmpty()){
+                System.out.println("No customers found! Try again.");
+                continue;
+            } // end of if statement
+            for(Customers customer : customers){
+                System.out.println("\t" + customer);
+            } // end of for loop
+            System.out.println("Type your customer id here (leave blank to search again): ");
+            String id = in.nextLine();
+            if(!id.equals("")){
+                targetCustomer = getCustomer(id);
+                if(targetCustomer != null){
                     foundID = true;
                 } // end of if statement
                 else{
-                    targetCustomer = getCustomer(id);
-                    if(targetCustomer != null){
-                        foundID = true;
-                    } // end of if statement
-                } // end of else statement
-                if(!foundID){
                     System.out.println("Invalid customer ID! Try again.");
-                } // end of if statement
-            } // end of if statement
-            else {
-                System.out.println("No previously existing customers, please indicate as new customer");
-                foundID = true;
+                } // end of else statement
             } // end of if statement
         } // end of while loop
         if(targetCustomer != null){
@@ -314,18 +448,33 @@ public class CustomerOrders {
 
         Customers targetCustomer = new Customers(lastName, firstName, street, zip, phone); // Customer instance created by user
 
+        // Most duplicates are caught here, without a failed insert and a rollback.
+        DuplicateCustomerFilter filter = getDuplicateFilter();
+        if(!filter.admit(targetCustomer)){
+            System.out.println("You're not a new customer!");
+            return null;
+        } // end of if statement
+        Customers admitted = targetCustomer;
         try{
             EntityTransaction tx = this.entityManager.getTransaction();
             tx.begin();
             this.entityManager.persist(targetCustomer);
             tx.commit();
+            this.customerIndex.add(targetCustomer);
             System.out.println("\nYou are: " + targetCustomer);
         } // end of try
-        catch(DatabaseException e){
-            //System.out.println(e);
+        catch(RollbackException e){
+            // Someone else added the same customer since the filter was read.  The commit
+            // reports the constraint violation this way, and has rolled back already.
             System.out.println("You're not a new customer!");
             targetCustomer = null;
         } // end of catch
+        finally{
+            if(this.entityManager.getTransaction().isActive()){
+                this.entityManager.getTransaction().rollback();
+            } // end of if statement
+            filter.committed(admitted);
+        } // end of finally
 
         return targetCustomer;
     } //end of promptNewCustomer method
@@ -388,24 +537,30 @@ public class CustomerOrders {
         boolean foundUPC = false;
         Products targetProduct = null;
         while(!foundUPC){
-            System.out.println("\nWhich product would you like? Select the desired from the following products:");
-            for(Products product: getProducts()){
-                System.out.println("\t" + product);
-            }
-            System.out.println("Type your product UPC here (leave blank to end order): ");
-            String upc = in.nextLine();
-            if(upc.equals("")){
+            System.out.println("\nWhich product would you like? Type its UPC, or words from its name, manufacturer or model to search for it (leave blank to end order): ");
+            String input = in.nextLine();
+            if(input.equals("")){
                 foundUPC = true;
             } // end of if statement
             else {
-                targetProduct = getProduct(upc);
+                targetProduct = getProduct(input.trim());
                 if(targetProduct != null){
                     foundUPC = true;
-                }
-            }
-            if(!foundUPC){
-                System.out.println("Invalid product UPC! Try again.");
-            } // end of if statement
+                } // end of if statement
+                else {
+                    // Not a UPC, so search for it.
+                    List<ProductMatch> matches = searchProducts(input, SEARCH_LIMIT);
+                    if(matches.isEmpty()){
+                        System.out.println("No products found! Try again.");
+                    } // end of if statement
+                    else {
+                        System.out.println("Products found:");
+                        for(ProductMatch match : matches){
+                            System.out.println("\t" + getProduct(match.getUpc()));
+                        } // end of for loop
+                    } // end of else statement
+                } // end of else statement
+            } // end of else statement
         } // end of while loop
         if(targetProduct != null){
             System.out.println("You have selected: \n\t" + targetProduct);
@@ -421,7 +576,7 @@ public class CustomerOrders {
     */
    public <E> void createEntity(List <E> entities) {
       for (E next : entities) {
-         LOGGER.info("Persisting: " + next);
+         LOGGER.fine("Persisting: " + next);
          // Use the CustomerOrders entityManager instance variable to get our EntityManager.
          this.entityManager.persist(next);
       } // end of for loop
@@ -430,8 +585,33 @@ public class CustomerOrders {
       // generate a value.  So the previous for loop will not show a value for the ID.  But
       // now that the Entity has been persisted, JPA has generated the ID and filled that in.
       for (E next : entities) {
-         LOGGER.info("Persisted object after flush (non-null id): " + next);
+         LOGGER.fine("Persisted object after flush (non-null id): " + next);
+      } // end of for loop
+   } // End of createEntity member method
+
+   /**
+    * Persist a long list of objects to the database, flushing them out in batches.  Every
+    * flushInterval entities the pending inserts are flushed (which EclipseLink sends as one
+    * JDBC batch) and the persistence context is cleared, so that the EntityManager does
+    * not hang on to every object that it has ever written.  This has to be called inside
+    * of a transaction, and since the context is cleared, the entities are detached by the
+    * time that this returns.
+    * @param entities       The list of entities to persist.
+    * @param flushInterval  How many entities to persist between flushes.
+    */
+   public <E> void createEntity(List <E> entities, int flushInterval) {
+      int pending = 0;
+      for (E next : entities) {
+         this.entityManager.persist(next);
+         if (++pending == flushInterval) {
+            this.entityManager.flush();
+            this.entityManager.clear();
+            pending = 0;
+         } // end of if statement
       } // end of for loop
+      this.entityManager.flush();
+      this.entityManager.clear();
+      LOGGER.fine("Persisted " + entities.size() + " objects");
    } // End of createEntity member method
 
    /**
@@ -439,38 +619,40 @@ public class CustomerOrders {
     * same name, as the string that you pass in.  To create a new Cars instance, you need to pass
     * in an instance of Products to satisfy the foreign key constraint, not just a string
     * representing the name of the style.
+    * The product comes from the product catalog, which only goes to the database the first time.
     * @param UPC        The name of the product that you are looking for.
     * @return           The Products instance corresponding to that UPC.
     */
    public Products getProduct (String UPC) {
-      // Run the native query that we defined in the Products entity to find the right style.
-      List<Products> products = this.entityManager.createNamedQuery("ReturnProduct",
-              Products.class).setParameter(1, UPC).getResultList();
-      if (products.size() == 0) {
-         // Invalid style name passed in.
-         return null;
-      } else {
-         // Return the style object that they asked for.
-         return products.get(0);
-      }
+      return catalog.get(UPC);
    }// End of the getProduct method
 
     /**
-     * Acquires a list of all products acquired from the database
+     * Acquires a list of all products, read a page at a time through the product catalog
      * @return The list of all Products
      */
    public List<Products> getProducts () {
-      // Run the native query that we defined in the Products entity to find the right style.
-      List<Products> products = this.entityManager.createNamedQuery("ReturnProducts",
-              Products.class).getResultList();
-      if (products.size() == 0) {
-         // Invalid style name passed in.
-         return null;
-      } else {
-         // Return the style object that they asked for.
-         return products;
-      }
-   } // End of the getProduct method
+      List<Products> products = new ArrayList<>();
+      catalog.forEachPage(STREAM_PAGE_SIZE, products::addAll);
+      return products.isEmpty() ? null : products;
+   } // End of the getProducts method
+
+   /**
+    * @return   The product catalog, with its hit and miss counts.
+    */
+   public ProductCatalog getCatalog() {
+      return catalog;
+   }
+
+   /**
+    * Reads a product by primary key, which comes from the shared cache if it is there, and
+    * from the database otherwise.
+    * @param UPC        The UPC of the product that you are looking for.
+    * @return           The Products instance corresponding to that UPC, or null.
+    */
+   private Products loadProduct (String UPC) {
+      return PersistenceMetrics.find(this.entityManager, Products.class, UPC);
+   }// End of the loadProduct method
 
     /**
      * Acquires a specific orderLine corresponding to an order
@@ -479,11 +661,12 @@ public class CustomerOrders {
      */
     public List<Order_lines> getOrderLines (Orders targetOrder) {
         // Run the native query that we defined in the Products entity to find the right style.
-        List<Order_lines> orderLines = this.entityManager
+        List<Order_lines> orderLines = PersistenceMetrics.timeQuery("ReturnOrderLine", () ->
+                this.entityManager
                 .createNamedQuery("ReturnOrderLine", Order_lines.class)
                 .setParameter(1, targetOrder.getCustomer().getCustomer_id())
                 .setParameter(2, targetOrder.getOrder_date())
-                .getResultList();
+                .getResultList());
         if (orderLines.size() == 0) {
             // Invalid style name passed in.
             return null;
@@ -493,22 +676,68 @@ public class CustomerOrders {
         }
     } // End of the getProduct method
 
+    /**
+     * Acquires the orders placed in a range of dates, using the primary key of ORDERS
+     * @param from Earliest order date to include
+     * @param to Order date to stop at, which is not included
+     * @return The orders in date order, which might be empty
+     */
+    public List<Orders> getOrdersBetween(LocalDateTime from, LocalDateTime to) {
+        return this.entityManager.createNamedQuery("OrdersBetween", Orders.class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultList();
+    } // End of the getOrdersBetween method
+
+    /**
+     * Acquires the orders made by one sales person, using the ORDERS_SOLD_BY index
+     * @param soldBy Name of the sales person
+     * @return The orders in date order, which might be empty
+     */
+    public List<Orders> getOrdersSoldBy(String soldBy) {
+        return this.entityManager.createNamedQuery("OrdersSoldBy", Orders.class)
+                .setParameter("soldBy", soldBy)
+                .getResultList();
+    } // End of the getOrdersSoldBy method
+
+    /**
+     * Acquires every order line for one product, using the ORDER_LINES_PRODUCT index
+     * @param UPC The product's UPC
+     * @return The order lines for that product, which might be empty
+     */
+    public List<Order_lines> getOrderLinesForProduct(String UPC) {
+        return this.entityManager.createNamedQuery("OrderLinesForProduct", Order_lines.class)
+                .setParameter("UPC", UPC)
+                .getResultList();
+    } // End of the getOrderLinesForProduct method
+
+    /**
+     * Acquires the customers with a given last name, using the CUSTOMERS_NAME index
+     * @param lastName The customers' last name
+     * @return The customers ordered by first name, which might be empty
+     */
+    public List<Customers> getCustomersByLastName(String lastName) {
+        return this.entityManager.createNamedQuery("CustomersByName", Customers.class)
+                .setParameter("lastName", lastName)
+                .getResultList();
+    } // End of the getCustomersByLastName method
+
    /**
-    * Acquires a Customer object corresponding to a customer_id from the database
-    * @param customer_ID        The name of the product that you are looking for.
-    * @return           The Customers instance corresponding to that customer_ID.
+    * Acquires a Customer object corresponding to a customer_id.  This looks the customer up by
+    * primary key rather than with the ReturnCustomer native query, so that it can be answered
+    * from the shared cache.
+    * @param customer_ID        The customer_id of the customer that you are looking for.
+    * @return           The Customers instance corresponding to that customer_ID, or null.
     */
    public Customers getCustomer (String customer_ID) {
-      // Run the native query that we defined in the Products entity to find the right style.
-      List<Customers> customers = this.entityManager.createNamedQuery("ReturnCustomer",
-              Customers.class).setParameter(1, customer_ID).getResultList();
-      if (customers.size() == 0) {
-         // Invalid style name passed in.
+      long id;
+      try {
+         id = Long.parseLong(customer_ID.trim());
+      } catch (NumberFormatException e) {
+         // Not a customer_id at all.
          return null;
-      } else {
-         // Return the style object that they asked for.
-         return customers.get(0);
       }
+      return PersistenceMetrics.find(this.entityManager, Customers.class, id);
    }// End of the getCustomer method
 
     /**
@@ -517,8 +746,9 @@ public class CustomerOrders {
      */
    public List<Customers> getCustomers() {
       // Run the native query that we defined in the Products entity to find the right style.
-      List<Customers> customers = this.entityManager.createNamedQuery("ReturnCustomers",
-              Customers.class).getResultList();
+      List<Customers> customers = PersistenceMetrics.timeQuery("ReturnCustomers", () ->
+              this.entityManager.createNamedQuery("ReturnCustomers",
+              Customers.class).getResultList());
       if (customers.size() == 0) {
          // Invalid style name passed in.
          return null;
@@ -527,4 +757,129 @@ public class CustomerOrders {
          return customers;
       }
    }// End of the getCustomer method
+
+    /**
+     * Finds the customers with a last name, first name or phone number that starts with the given
+     * prefix, such as "Sm" or "562-".  The search itself is made in memory, in the customer
+     * index; only the customers found are then read, usually from the shared cache.
+     * @param prefix The start of the name or phone number
+     * @param limit The most customers to return
+     * @return The customers found
+     */
+   public List<Customers> searchCustomers(String prefix, int limit) {
+      List<Customers> customers = new ArrayList<>();
+      for (long id : getCustomerIndex().search(prefix, limit)) {
+         Customers customer = PersistenceMetrics.find(this.entityManager, Customers.class, id);
+         if (customer != null) {
+            customers.add(customer);
+         } // end of if statement
+      } // end of for loop
+      return customers;
+   }// End of the searchCustomers method
+
+    /**
+     * Finds the products whose name, manufacturer and model contain every word of a search,
+     * best match first, from the in-memory product search rather than a LIKE query.
+     * @param query The words to search for; the last one can be just the start of a word
+     * @param limit The most products to return
+     * @return The products found
+     */
+   public List<ProductMatch> searchProducts(String query, int limit) {
+      if (this.productSearch == null) {
+         ProductSearch search = new ProductSearch();
+         catalog.forEachPage(STREAM_PAGE_SIZE, search::putAll);
+         this.productSearch = search;
+      } // end of if statement
+      return this.productSearch.search(query, limit);
+   }// End of the searchProducts method
+
+    /**
+     * Reads every customer into the customer index the first time that it is needed.
+     * @return The customer index
+     */
+   private CustomerIndex getCustomerIndex() {
+      loadCustomers();
+      return this.customerIndex;
+   }// End of the getCustomerIndex method
+
+    /**
+     * Reads every customer into the duplicate filter the first time that it is needed.
+     * @return The duplicate customer filter
+     */
+   private DuplicateCustomerFilter getDuplicateFilter() {
+      loadCustomers();
+      return this.duplicateFilter;
+   }// End of the getDuplicateFilter method
+
+    /**
+     * Reads every customer, once, into both the customer index and the duplicate filter.  The
+     * filter is sized for twice as many customers as there are now, so that it stays accurate
+     * as customers are added.
+     */
+   private void loadCustomers() {
+      if (this.customersLoaded) {
+         return;
+      } // end of if statement
+      long count = this.entityManager.createQuery("SELECT COUNT(c) FROM Customers c", Long.class)
+              .getSingleResult();
+      this.duplicateFilter = new DuplicateCustomerFilter(Math.max(1_000, 2 * count),
+              DUPLICATE_FALSE_POSITIVE_RATE, DuplicateCustomerFilter.existsIn(this.entityManager));
+      try (Stream<Customers> customers = streamCustomers()) {
+         this.customerIndex.addAll(customers.peek(this.duplicateFilter::add));
+      } // end of try
+      this.customersLoaded = true;
+   }// End of the loadCustomers method
+
+    /**
+     * Acquires one page of customers, in customer_id order.  To go through all of the customers,
+     * start with afterId of 0 and then pass in the customer_id of the last customer on each page,
+     * until a page comes back with fewer than pageSize customers.  Since this searches on the
+     * primary key rather than skipping over rows, every page is as quick as the first one.
+     * @param afterId The customer_id of the last customer on the previous page
+     * @param pageSize The most customers to return
+     * @return The customers with a customer_id greater than afterId
+     */
+   public List<Customers> getCustomersPage(long afterId, int pageSize) {
+      return this.entityManager.createNamedQuery("CustomersAfter", Customers.class)
+              .setParameter("lastId", afterId)
+              .setMaxResults(pageSize)
+              .getResultList();
+   }// End of the getCustomersPage method
+
+    /**
+     * Acquires one page of products, in UPC order.  This works the same way as getCustomersPage,
+     * starting with an afterUPC of "" and then passing in the UPC of the last product on each page.
+     * @param afterUPC The UPC of the last product on the previous page
+     * @param pageSize The most products to return
+     * @return The products with a UPC after afterUPC
+     */
+   public List<Products> getProductsPage(String afterUPC, int pageSize) {
+      return this.entityManager.createNamedQuery("ProductsAfter", Products.class)
+              .setParameter("lastUPC", afterUPC)
+              .setMaxResults(pageSize)
+              .getResultList();
+   }// End of the getProductsPage method
+
+    /**
+     * Streams every customer, in customer_id order, through a database cursor.  The customers
+     * are read a page at a time and are read-only, so this uses the same amount of memory no
+     * matter how many customers there are.  Only the list fetch group is read: the names and
+     * phone numbers.  The stream must be closed when done.
+     * @return All of the customers
+     */
+   public Stream<Customers> streamCustomers() {
+      return QueryStreams.stream(this.entityManager.createNamedQuery("CustomersAfter")
+              .setParameter("lastId", Long.MIN_VALUE)
+              .setHint(QueryHints.FETCH_GROUP_NAME, Customers.LIST), Customers.class, STREAM_PAGE_SIZE);
+   }// End of the streamCustomers method
+
+    /**
+     * Streams every product, in UPC order, through a database cursor.  Like streamCustomers,
+     * the products are read-only and the stream must be closed when done.
+     * @return All of the products
+     */
+   public Stream<Products> streamProducts() {
+      return QueryStreams.stream(this.entityManager.createNamedQuery("ProductsAfter")
+              .setParameter("lastUPC", ""), Products.class, STREAM_PAGE_SIZE);
+   }// End of the streamProducts method
 } // End of CustomerOrders class
@@ -0,0 +1,410 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * Fills the database with made up customers, products, orders and order lines, for trying
+ * things out at a realistic size.
+ * <p>
+ * The same seed against the same starting database always produces the same rows.  New
+ * customer ids start after the largest one already in use, and the SEQUENCE table is moved
+ * past them afterwards, so that customers created later through JPA do not collide with them.
+ * New UPCs are 12 digit numbers that start after the largest such UPC already in use, and new
+ * orders are dated after the latest order already there.
+ * </p>
+ * <p>
+ * Some products sell much more than others: the product on each order line is picked with a
+ * Zipf distribution, where the product ranked r is picked in proportion to 1 / r^skew.  A skew
+ * of 0 picks every product equally often; around 1 a few hot products get most of the lines.
+ * Each order has from 1 to maxLinesPerOrder lines, for different products.
+ * </p>
+ * <p>
+ * Rows are written with plain JDBC batched INSERTs on the EntityManager's own connection,
+ * committing every batchSize rows.  Nothing goes through the persistence context, so memory
+ * use does not grow with the number of rows, only with the number of customers and products.
+ * The Order_summaries of the new customers are written as well.  Since this bypasses JPA,
+ * clear the shared cache of any EntityManagerFactory that was already running.
+ * </p>
+ */
+public class DataGenerator {
+    /** Where the generator gets its EntityManager, and through it its connection. */
+    private final EntityManagerFactory factory;
+
+    /** Where all of the random choices come from. */
+    private final SplittableRandom random;
+
+    /** How many rows to insert in each transaction. */
+    private final int batchSize;
+
+    /** Seconds between one generated order and the next. */
+    private static final int SECONDS_BETWEEN_ORDERS = 7;
+
+    /** Orders are dated from here on if there are no orders yet. */
+    private static final Timestamp FIRST_ORDER_DATE = Timestamp.valueOf("2020-01-01 00:00:00");
+
+    private static final String[] FIRST_NAMES = {"Alex", "Blake", "Casey", "Dana", "Eli", "Frankie", "Gray",
+            "Harper", "Indy", "Jordan", "Kai", "Logan", "Morgan", "Noel", "Oakley", "Parker", "Quinn", "Riley",
+            "Sam", "Taylor"};
+
+    private static final String[] LAST_NAMES = {"Nguyen", "Garcia", "Smith", "Kim", "Patel", "Lopez", "Chen",
+            "Johnson", "Martinez", "Brown", "Davis", "Hernandez", "Lee", "Wilson", "Anderson", "Tran", "Rivera",
+            "Clark", "Lewis", "Walker"};
+
+    private static final String[] MANUFACTURERS = {"Acme", "Globex", "Initech", "Umbrella", "Hooli", "Soylent",
+            "Stark", "Wayne", "Wonka", "Tyrell"};
+
+    private static final String[] PRODUCT_KINDS = {"Widget", "Gadget", "Gizmo", "Doohickey", "Sprocket",
+            "Flange", "Cog", "Lever", "Spring", "Valve"};
+
+    private static final String[] SALES_PEOPLE = {"Ana", "Ben", "Cho", "Dev", "Eva", "Fin", "Gus", "Hal"};
+
+    private static final Logger LOGGER = Logger.getLogger(DataGenerator.class.getName());
+
+    /**
+     * Constructor for the DataGenerator.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param seed      Seed for the random choices.
+     * @param batchSize How many rows to insert in each transaction.
+     */
+    public DataGenerator(EntityManagerFactory factory, long seed, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size has to be greater than 0");
+        } // end of if statement
+        this.factory = factory;
+        this.random = new SplittableRandom(seed);
+        this.batchSize = batchSize;
+    } // end of DataGenerator()
+
+    /**
+     * Generates and inserts everything.
+     * @param customers         How many customers to create.
+     * @param products          How many products to create.
+     * @param orders            How many orders to create, spread over the new customers.
+     * @param maxLinesPerOrder  The most lines that one order can have.
+     * @param skew              How strongly orders favor the hot products; 0 for not at all.
+     * @return                  The number of order lines created.
+     */
+    public long generate(int customers, int products, long orders, int maxLinesPerOrder, double skew) {
+        if (customers <= 0 || products <= 0 || orders < 0 || maxLinesPerOrder <= 0 || skew < 0) {
+            throw new IllegalArgumentException("Counts have to be greater than 0, and skew at least 0");
+        } // end of if statement
+        long started = System.nanoTime();
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            long firstCustomer = queryLong(connection, "SELECT MAX(CUSTOMER_ID) FROM CUSTOMERS", 0) + 1;
+            long firstUPC = queryLong(connection,
+                    "SELECT MAX(UPC) FROM PRODUCTS WHERE LENGTH(UPC) = 12 AND UPC BETWEEN '000000000000' AND '999999999999'",
+                    0) + 1;
+            Timestamp latest = queryTimestamp(connection, "SELECT MAX(ORDER_DATE) FROM ORDERS");
+            long firstOrderMillis = latest == null ? FIRST_ORDER_DATE.getTime() : latest.getTime() + 1000;
+            manager.getTransaction().commit();
+
+            insertCustomers(manager, firstCustomer, customers);
+            double[] prices = insertProducts(manager, firstUPC, products);
+            long lines = insertOrders(manager, firstCustomer, customers, firstUPC, prices, orders,
+                    Math.min(maxLinesPerOrder, products), zipfCumulative(products, skew), firstOrderMillis);
+            advanceSequence(manager, firstCustomer + customers - 1);
+
+            long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+            long rows = customers + products + orders + lines;
+            LOGGER.info("Generated " + customers + " customers, " + products + " products, " + orders +
+                    " orders and " + lines + " order lines in " + millis + " ms (" + rows * 1000 / millis +
+                    " rows/s)");
+            return lines;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not generate the data", e);
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            } // end of if statement
+            manager.close();
+        } // end of try/catch/finally
+    } // end of generate method
+
+    /**
+     * Inserts count customers, with ids from firstId on.  Names are picked at random, and the
+     * phone number is made from the id, which keeps first name, last name and phone unique.
+     */
+    private void insertCustomers(EntityManager manager, long firstId, int count) throws SQLException {
+        Batch batch = new Batch(manager, "INSERT INTO CUSTOMERS(CUSTOMER_ID, FIRST_NAME, LAST_NAME, PHONE, " +
+                "STREET, ZIP) VALUES (?, ?, ?, ?, ?, ?)");
+        for (int i = 0; i < count; i++) {
+            long id = firstId + i;
+            PreparedStatement insert = batch.statement(0);
+            insert.setLong(1, id);
+            insert.setString(2, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            insert.setString(3, LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            insert.setString(4, String.format("%03d-%03d-%04d", id / 10_000_000 % 1000, id / 10_000 % 1000, id % 10_000));
+            insert.setString(5, (1 + random.nextInt(9999)) + " Bellflower Blvd");
+            insert.setString(6, String.format("%05d", 90000 + random.nextInt(1000)));
+            insert.addBatch();
+            batch.added(1);
+        } // end of for loop
+        batch.finish();
+    } // end of insertCustomers method
+
+    /**
+     * Inserts count products, with UPCs from firstUPC on.  There is plenty of stock of each.
+     * @return  The list price of each product, in the order that they were inserted.
+     */
+    private double[] insertProducts(EntityManager manager, long firstUPC, int count) throws SQLException {
+        double[] prices = new double[count];
+        Batch batch = new Batch(manager, "INSERT INTO PRODUCTS(UPC, MFGR, MODEL, PROD_NAME, UNIT_LIST_PRICE, " +
+                "UNITS_IN_STOCK) VALUES (?, ?, ?, ?, ?, ?)");
+        for (int i = 0; i < count; i++) {
+            prices[i] = (100 + random.nextInt(50_000)) / 100.0;
+            PreparedStatement insert = batch.statement(0);
+            insert.setString(1, upc(firstUPC, i));
+            insert.setString(2, MANUFACTURERS[random.nextInt(MANUFACTURERS.length)]);
+            insert.setString(3, "M-" + (firstUPC + i));
+            insert.setString(4, PRODUCT_KINDS[random.nextInt(PRODUCT_KINDS.length)] + " " + (firstUPC + i));
+            insert.setDouble(5, prices[i]);
+            insert.setInt(6, 1_000_000);
+            insert.addBatch();
+            batch.added(1);
+        } // end of for loop
+        batch.finish();
+        return prices;
+    } // end of insertProducts method
+
+    /**
+     * Inserts count orders, each for a customer picked at random, with its order lines, and then
+     * the order summary of each of those customers.  Orders are SECONDS_BETWEEN_ORDERS apart, so
+     * no two of them share a date.
+     * @return  The number of order lines inserted.
+     */
+    private long insertOrders(EntityManager manager, long firstCustomer, int customers, long firstUPC,
+                              double[] prices, long count, int maxLines, double[] cumulative,
+                              long firstOrderMillis) throws SQLException {
+        int[] orderCounts = new int[customers];
+        double[] spend = new double[customers];
+        long[] lastOrder = new long[customers];
+        int[] picked = new int[maxLines];
+        long lines = 0;
+        Batch batch = new Batch(manager, "INSERT INTO ORDERS(CUSTOMER_ID, ORDER_DATE, SOLD_BY) VALUES (?, ?, ?)",
+                "INSERT INTO ORDER_LINES(CUSTOMER_ID, ORDER_DATE, PRODUCT_UPC, QUANTITY, UNIT_SALE_PRICE) " +
+                "VALUES (?, ?, ?, ?, ?)");
+        for (long i = 0; i < count; i++) {
+            int customer = random.nextInt(customers);
+            long millis = firstOrderMillis + i * SECONDS_BETWEEN_ORDERS * 1000L;
+            Timestamp orderDate = new Timestamp(millis);
+            PreparedStatement insert = batch.statement(0);
+            PreparedStatement lineInsert = batch.statement(1);
+            insert.setLong(1, firstCustomer + customer);
+            insert.setTimestamp(2, orderDate);
+            insert.setString(3, SALES_PEOPLE[random.nextInt(SALES_PEOPLE.length)]);
+            insert.addBatch();
+
+            // Pick distinct products for the lines, since a product can only be in an order once.
+            int lineCount = 1 + random.nextInt(maxLines);
+            double total = 0;
+            for (int line = 0; line < lineCount; line++) {
+                int product;
+                do {
+                    product = pickProduct(cumulative);
+                } while (contains(picked, line, product));
+                picked[line] = product;
+                int quantity = 1 + random.nextInt(5);
+                lineInsert.setLong(1, firstCustomer + customer);
+                lineInsert.setTimestamp(2, orderDate);
+                lineInsert.setString(3, upc(firstUPC, product));
+                lineInsert.setInt(4, quantity);
+                lineInsert.setDouble(5, prices[product]);
+                lineInsert.addBatch();
+                total += quantity * prices[product];
+            } // end of for loop
+            lines += lineCount;
+            orderCounts[customer]++;
+            spend[customer] += total;
+            lastOrder[customer] = millis;
+            batch.added(lineCount + 1);
+        } // end of for loop
+        batch.finish();
+
+        batch = new Batch(manager, "INSERT INTO ORDER_SUMMARIES(CUSTOMER_ID, ORDER_COUNT, " +
+                "LIFETIME_SPEND, LAST_ORDER_DATE) VALUES (?, ?, ?, ?)");
+        for (int customer = 0; customer < customers; customer++) {
+            if (orderCounts[customer] == 0) {
+                continue;
+            } // end of if statement
+            PreparedStatement insert = batch.statement(0);
+            insert.setLong(1, firstCustomer + customer);
+            insert.setInt(2, orderCounts[customer]);
+            insert.setDouble(3, spend[customer]);
+            insert.setTimestamp(4, new Timestamp(lastOrder[customer]));
+            insert.addBatch();
+            batch.added(1);
+        } // end of for loop
+        batch.finish();
+        return lines;
+    } // end of insertOrders method
+
+    /**
+     * Moves the SEQUENCE table that generates customer ids past the customers just inserted.
+     * @param lastId    The largest customer id now in use.
+     */
+    private void advanceSequence(EntityManager manager, long lastId) {
+        manager.getTransaction().begin();
+        int updated = manager.createNativeQuery("UPDATE SEQUENCE SET SEQ_COUNT = ? " +
+                        "WHERE SEQ_NAME = 'SEQ_GEN' AND SEQ_COUNT < ?")
+                .setParameter(1, lastId)
+                .setParameter(2, lastId)
+                .executeUpdate();
+        manager.getTransaction().commit();
+        LOGGER.fine(updated == 0 ? "SEQUENCE was already past " + lastId : "Moved SEQUENCE to " + lastId);
+    } // end of advanceSequence method
+
+    /**
+     * Builds the cumulative distribution of a Zipf distribution over count products: element r
+     * is the chance of picking one of the products ranked 0 to r.
+     */
+    static double[] zipfCumulative(int count, double skew) {
+        double[] cumulative = new double[count];
+        double sum = 0;
+        for (int rank = 0; rank < count; rank++) {
+            sum += 1 / Math.pow(rank + 1, skew);
+            cumulative[rank] = sum;
+        } // end of for loop
+        for (int rank = 0; rank < count; rank++) {
+            cumulative[rank] /= sum;
+        } // end of for loop
+        return cumulative;
+    } // end of zipfCumulative method
+
+    /**
+     * Picks a product from the cumulative distribution, with a binary search.
+     */
+    private int pickProduct(double[] cumulative) {
+        int found = Arrays.binarySearch(cumulative, random.nextDouble());
+        int product = found >= 0 ? found : -found - 1;
+        return Math.min(product, cumulative.length - 1);
+    } // end of pickProduct method
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            } // end of if statement
+        } // end of for loop
+        return false;
+    } // end of contains method
+
+    private static String upc(long firstUPC, int index) {
+        return String.format("%012d", firstUPC + index);
+    } // end of upc method
+
+    private static long queryLong(Connection connection, String sql, long otherwise) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            if (result.next() && result.getString(1) != null) {
+                return Long.parseLong(result.getString(1));
+            } // end of if statement
+            return otherwise;
+        } // end of try-with-resources
+    } // end of queryLong method
+
+    private static Timestamp queryTimestamp(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            return result.next() ? result.getTimestamp(1) : null;
+        } // end of try-with-resources
+    } // end of queryTimestamp method
+
+    /**
+     * Batched INSERTs that are committed every batchSize rows.  A batch can have several
+     * statements, which are sent in the order given, so that for instance order lines always
+     * follow their orders.  The JDBC connection can only be had while a transaction is active,
+     * so the statements are prepared again for each transaction.
+     */
+    private class Batch {
+        private final EntityManager manager;
+        private final String[] sql;
+        private final PreparedStatement[] statements;
+        private int pending;
+
+        Batch(EntityManager manager, String... sql) throws SQLException {
+            this.manager = manager;
+            this.sql = sql;
+            this.statements = new PreparedStatement[sql.length];
+            begin();
+        }
+
+        /** The statement to set the parameters of, and add to the batch. */
+        PreparedStatement statement(int index) {
+            return statements[index];
+        }
+
+        /** Counts rows that were added to the statements, committing once there are enough. */
+        void added(int rows) throws SQLException {
+            pending += rows;
+            if (pending >= batchSize) {
+                finish();
+                begin();
+            } // end of if statement
+        }
+
+        /** Sends and commits whatever is pending. */
+        void finish() throws SQLException {
+            for (PreparedStatement statement : statements) {
+                statement.executeBatch();
+                statement.close();
+            } // end of for loop
+            manager.getTransaction().commit();
+            pending = 0;
+        }
+
+        private void begin() throws SQLException {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            for (int i = 0; i < sql.length; i++) {
+                statements[i] = connection.prepareStatement(sql[i]);
+            } // end of for loop
+        }
+    } // End of Batch class
+
+    /**
+     * Command line entry point.
+     * @param args  customers, products, orders, the most lines per order, the skew and the seed.
+     *              For instance 100000 10000 1000000 5 1.0 42.
+     */
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.out.println("Usage: DataGenerator <customers> <products> <orders> <max lines per order> " +
+                    "<skew> <seed> [batch size]");
+            return;
+        } // end of if statement
+        int batchSize = args.length > 6 ? Integer.parseInt(args[6]) : 10_000;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrders");
+        try {
+            long lines = new DataGenerator(factory, Long.parseLong(args[5]), batchSize).generate(
+                    Integer.parseInt(args[0]), Integer.parseInt(args[1]), Long.parseLong(args[2]),
+                    Integer.parseInt(args[3]), Double.parseDouble(args[4]));
+            System.out.println("Generated " + lines + " order lines");
+        } finally {
+            factory.close();
+        } // end of try/finally
+    } // End of the main method
+} // End of DataGenerator class
@@ -0,0 +1,298 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A ready-made Derby database, with the schema and the seed data already in it, that can be
+ * copied into place instead of creating the tables and replaying the SQL every time.
+ * <p>
+ * build creates the image: it lets JPA create the schema from the entities, runs
+ * sql/seed-data.sql, moves the SEQUENCE table past the seeded customer ids, shuts the database
+ * down cleanly and writes a VERSION file next to it.  The version is a hash of SCHEMA_VERSION
+ * and of the seed data, so it changes whenever either does.  Run it from Maven with
+ * mvn -P db-image package, which leaves the image in target/database-image.
+ * </p>
+ * <p>
+ * install copies an image into the directory that the persistence units open.  It only does
+ * so if there is no database there yet, or if the one there was itself installed from an
+ * older image; a database that was created some other way is never replaced.  The copy is
+ * made next to the database and renamed into place, so an install that is cut short never
+ * leaves a partial database behind.  Copying the files of a small database takes a few
+ * milliseconds.  The console program and the HTTP
+ * server call installIfConfigured at startup, which installs the image named by the
+ * customerorders.image system property, if it is set.
+ * </p>
+ */
+public final class DatabaseImage {
+    /**
+     * Bump this whenever the entities change in a way that changes the tables, so that
+     * images built before the change are no longer used.
+     */
+    static final int SCHEMA_VERSION = 1;
+
+    /** The database that the CustomerOrders persistence units open; see persistence.xml. */
+    static final Path DATABASE = Paths.get("database", "CustomerOrders");
+
+    /** The system property naming the image to install at startup. */
+    static final String IMAGE_PROPERTY = "customerorders.image";
+
+    /** Name of the database inside of the image directory. */
+    private static final String DATABASE_NAME = "CustomerOrders";
+
+    /** Name of the file holding the version, in the image directory and next to an installed database. */
+    private static final String VERSION_FILE = "VERSION";
+
+    /** The script with the seed data, on the class path. */
+    private static final String SEED_DATA = "sql/seed-data.sql";
+
+    private static final Logger LOGGER = Logger.getLogger(DatabaseImage.class.getName());
+
+    private DatabaseImage() {}
+
+    /**
+     * Builds a new image, replacing whatever is in imageDirectory.
+     * @param imageDirectory    Where to put the image.
+     * @return                  The version of the image.
+     * @throws IOException      If the image cannot be written.
+     */
+    public static String build(Path imageDirectory) throws IOException {
+        long started = System.nanoTime();
+        deleteRecursively(imageDirectory);
+        Files.createDirectories(imageDirectory);
+        Path database = imageDirectory.resolve(DATABASE_NAME).toAbsolutePath();
+        String url = "jdbc:derby:" + database;
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", url + ";create=true");
+        properties.put("javax.persistence.schema-generation.database.action", "create");
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrders", properties);
+        try {
+            EntityManager manager = factory.createEntityManager();
+            try {
+                manager.getTransaction().begin();
+                for (String statement : readStatements(SEED_DATA)) {
+                    manager.createNativeQuery(statement).executeUpdate();
+                } // end of for loop
+                // The seed data gives the customers their ids, which the SEQUENCE table does not know about.
+                manager.createNativeQuery("UPDATE SEQUENCE SET SEQ_COUNT = " +
+                        "(SELECT COALESCE(MAX(CUSTOMER_ID), 0) FROM CUSTOMERS) WHERE SEQ_NAME = 'SEQ_GEN'")
+                        .executeUpdate();
+                manager.getTransaction().commit();
+            } finally {
+                if (manager.getTransaction().isActive()) {
+                    manager.getTransaction().rollback();
+                } // end of if statement
+                manager.close();
+            } // end of try/finally
+        } finally {
+            factory.close();
+        } // end of try/finally
+        shutdown(url);
+
+        String version = version();
+        Files.write(imageDirectory.resolve(VERSION_FILE), version.getBytes(StandardCharsets.UTF_8));
+        LOGGER.info("Built database image " + version + " in " + imageDirectory + " in " +
+                (System.nanoTime() - started) / 1_000_000 + " ms");
+        return version;
+    } // end of build method
+
+    /**
+     * Copies an image into place, unless the database there is already up to date or was not
+     * installed from an image at all.  The database must not be open.
+     * <p>
+     * The image is copied into a temporary directory next to the database, which is then
+     * renamed into place in one step, so the database directory never holds a partial copy.
+     * The steps are ordered so that stopping after any one of them leaves something that the
+     * next install puts right:
+     * <ol>
+     *   <li>copy the image into the temporary directory, which the next install deletes;</li>
+     *   <li>delete the old database, while its version file still names the old image;</li>
+     *   <li>write the version file, while there is no database for it to vouch for;</li>
+     *   <li>rename the temporary directory to the database.</li>
+     * </ol>
+     * </p>
+     * @param imageDirectory    The image, as written by build.
+     * @param database          Where the database goes.
+     * @return                  true if the image was copied, false if the database was left alone.
+     * @throws IOException      If the image cannot be read or copied.
+     */
+    public static boolean install(Path imageDirectory, Path database) throws IOException {
+        Path imageVersionFile = imageDirectory.resolve(VERSION_FILE);
+        if (!Files.exists(imageVersionFile)) {
+            throw new IOException("No database image in " + imageDirectory);
+        } // end of if statement
+        String imageVersion = new String(Files.readAllBytes(imageVersionFile), StandardCharsets.UTF_8).trim();
+        Path installedVersionFile = installedVersionFile(database);
+        if (Files.exists(database)) {
+            if (!Files.exists(installedVersionFile)) {
+                LOGGER.warning(database + " was not installed from an image; leaving it alone");
+                return false;
+            } // end of if statement
+            String installedVersion = new String(Files.readAllBytes(installedVersionFile), StandardCharsets.UTF_8).trim();
+            if (installedVersion.equals(imageVersion)) {
+                return false;
+            } // end of if statement
+            LOGGER.info("Replacing database image " + installedVersion + " with " + imageVersion);
+        } // end of if statement
+
+        long started = System.nanoTime();
+        Path parent = database.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        } // end of if statement
+        // Left over if an earlier install was cut short.
+        Path copy = database.resolveSibling(database.getFileName() + ".installing");
+        deleteRecursively(copy);
+        Path source = imageDirectory.resolve(DATABASE_NAME);
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(source)) {
+            walk.forEach(paths::add);
+        } // end of try-with-resources
+        for (Path path : paths) {
+            Files.copy(path, copy.resolve(source.relativize(path).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+        } // end of for loop
+        deleteRecursively(database);
+        Files.write(installedVersionFile, imageVersion.getBytes(StandardCharsets.UTF_8));
+        Files.move(copy, database, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("Installed database image " + imageVersion + " in " + database + " in " +
+                (System.nanoTime() - started) / 1_000_000 + " ms");
+        return true;
+    } // end of install method
+
+    /**
+     * Installs the image named by the customerorders.image system property into the database
+     * that the persistence units open.  Does nothing if the property is not set.
+     */
+    public static void installIfConfigured() {
+        String image = System.getProperty(IMAGE_PROPERTY);
+        if (image == null || image.isEmpty()) {
+            return;
+        } // end of if statement
+        try {
+            install(Paths.get(image), DATABASE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not install the database image " + image, e);
+        } // end of try/catch
+    } // end of installIfConfigured method
+
+    /**
+     * @return  The version that an image built now would have: a hash of SCHEMA_VERSION and
+     *          of the seed data.
+     * @throws IOException  If the seed data cannot be read.
+     */
+    static String version() throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("schema " + SCHEMA_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(readResource(SEED_DATA));
+            StringBuilder version = new StringBuilder(SCHEMA_VERSION + "-");
+            byte[] hash = digest.digest();
+            for (int i = 0; i < 8; i++) {
+                version.append(String.format("%02x", hash[i]));
+            } // end of for loop
+            return version.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } // end of try/catch
+    } // end of version method
+
+    /**
+     * The version of an installed database is kept next to it, not inside of it, so that Derby
+     * never sees a file that it does not know about.
+     */
+    private static Path installedVersionFile(Path database) {
+        return database.resolveSibling(database.getFileName() + "." + VERSION_FILE);
+    } // end of installedVersionFile method
+
+    /**
+     * Reads a script with one statement per line, skipping blank lines.
+     */
+    static List<String> readStatements(String resource) throws IOException {
+        List<String> statements = new ArrayList<>();
+        for (String line : new String(readResource(resource), StandardCharsets.UTF_8).split("\\R")) {
+            if (!line.trim().isEmpty()) {
+                statements.add(line.trim());
+            } // end of if statement
+        } // end of for loop
+        return statements;
+    } // end of readStatements method
+
+    private static byte[] readResource(String resource) throws IOException {
+        try (InputStream in = DatabaseImage.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + resource);
+            } // end of if statement
+            return in.readAllBytes();
+        } // end of try-with-resources
+    } // end of readResource method
+
+    /**
+     * Shuts down one embedded Derby database, so that all of its files are written out and it
+     * can be copied.  Derby reports a successful shutdown with SQL state 08006.
+     */
+    private static void shutdown(String url) throws IOException {
+        try {
+            DriverManager.getConnection(url + ";shutdown=true").close();
+        } catch (SQLException e) {
+            if (!"08006".equals(e.getSQLState())) {
+                throw new IOException("Could not shut down " + url, e);
+            } // end of if statement
+        } // end of try/catch
+    } // end of shutdown method
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        } // end of if statement
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(paths::add);
+        } // end of try-with-resources
+        for (Path path : paths) {
+            Files.delete(path);
+        } // end of for loop
+    } // end of deleteRecursively method
+
+    /**
+     * Command line entry point: builds an image.
+     * @param args  The directory to build the image in, target/database-image by default.
+     * @throws IOException  If the image cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path imageDirectory = Paths.get(args.length > 0 ? args[0] : "target/database-image");
+        System.out.println("Built database image " + build(imageDirectory) + " in " + imageDirectory);
+    } // End of the main method
+} // End of DatabaseImage class
@@ -0,0 +1,285 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Customers;
+
+import javax.persistence.EntityManager;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Tells whether a new customer would break the unique constraint on first_name, last_name and
+ * phone, without trying to insert them.  A failed insert costs a whole transaction: the
+ * statement, the constraint violation, and the rollback.  When a batch of a bulk import fails
+ * that way, every other customer in the batch is rolled back with it.
+ * <p>
+ * The filter is a Bloom filter over the (first_name, last_name, phone) of every customer that
+ * has been added to it.  A Bloom filter can say for certain that it has never seen a
+ * customer, and most new customers are answered that way, from memory.  When it says that it
+ * might have seen one, the answer is checked exactly: first against the customers that have
+ * been admitted but not committed yet, which the database cannot see, and then with a lookup
+ * on the unique index.  So the filter never turns away a customer that is not a duplicate.
+ * </p>
+ * <p>
+ * The names and phone number are compared exactly, the same way as the unique constraint
+ * compares them.  A filter that holds more customers than it was sized for still works, but
+ * more of its answers have to be checked in the database; falsePositives counts those.
+ * Customers added by some other process after the filter was loaded are not in it, so the
+ * insert can still fail, and callers still have to handle that.
+ * </p>
+ */
+public class DuplicateCustomerFilter {
+    /** The bits of the Bloom filter. */
+    private final AtomicLongArray bits;
+
+    /** Number of bits in the Bloom filter. */
+    private final long bitCount;
+
+    /** How many bits each customer sets. */
+    private final int hashCount;
+
+    /** Checks in the database whether there is a customer with the same names and phone. */
+    private final Predicate<Customers> exists;
+
+    /** Keys of the customers that have been admitted, but not committed yet. */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /** Number of customers added, either loaded or admitted. */
+    private final AtomicLong customers = new AtomicLong();
+
+    /** Number of customers checked by admit. */
+    private final AtomicLong checked = new AtomicLong();
+
+    /** Number of customers turned away as duplicates; each of these is a failed insert avoided. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Number of times that the database had to be asked. */
+    private final AtomicLong lookups = new AtomicLong();
+
+    /** Number of database lookups that found no duplicate after all. */
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /** Separates the names and phone number in a key. */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * Constructor for the DuplicateCustomerFilter.
+     * @param expectedCustomers How many customers the filter is expected to hold, counting the
+     *                          ones that are already in the database and the ones to come.
+     * @param falsePositiveRate The fraction of new customers that can be checked in the
+     *                          database, such as 0.01.  Smaller takes more memory: about 10
+     *                          bits per customer for 1%, and 14 for 0.1%.
+     * @param exists            Checks in the database whether there is already a customer
+     *                          with the same names and phone; see existsIn.
+     */
+    public DuplicateCustomerFilter(long expectedCustomers, double falsePositiveRate, Predicate<Customers> exists) {
+        if (expectedCustomers <= 0) {
+            throw new IllegalArgumentException("Expected customers has to be greater than 0");
+        } // end of if statement
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate has to be between 0 and 1");
+        } // end of if statement
+        double ln2 = Math.log(2);
+        long words = (long) Math.ceil(-expectedCustomers * Math.log(falsePositiveRate) / (ln2 * ln2) / Long.SIZE);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many expected customers: " + expectedCustomers);
+        } // end of if statement
+        this.bits = new AtomicLongArray((int) Math.max(1, words));
+        this.bitCount = (long) this.bits.length() * Long.SIZE;
+        this.hashCount = (int) Math.max(1, Math.round((double) this.bitCount / expectedCustomers * ln2));
+        this.exists = exists;
+    } // end of DuplicateCustomerFilter()
+
+    /**
+     * Adds every customer in a stream, such as CustomerOrders.streamCustomers.  Only the names
+     * and phone numbers are used, so the list fetch group is enough.
+     * @param stream    Customers that are already in the database.  The caller closes it.
+     */
+    public void addAll(Stream<Customers> stream) {
+        stream.forEach(this::add);
+    } // end of addAll method
+
+    /**
+     * Adds a customer that is already in the database.
+     * @param customer  The customer.
+     */
+    public void add(Customers customer) {
+        long hash = hash(customer);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = bits.get(word);
+            while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+                old = bits.get(word);
+            } // end of while loop
+        } // end of for loop
+        customers.incrementAndGet();
+    } // end of add method
+
+    /**
+     * Decides whether a new customer can be inserted.  If they can, they are added to the
+     * filter and held as pending until committed is called, so that the same customer is
+     * turned away if they come up again before then.
+     * @param customer  The new customer.
+     * @return          true if the customer is not a duplicate, false if there is already a
+     *                  customer with the same first name, last name and phone number.
+     */
+    public boolean admit(Customers customer) {
+        checked.incrementAndGet();
+        if (mightContain(customer)) {
+            if (pending.contains(key(customer))) {
+                rejected.incrementAndGet();
+                return false;
+            } // end of if statement
+            lookups.incrementAndGet();
+            if (exists.test(customer)) {
+                rejected.incrementAndGet();
+                return false;
+            } // end of if statement
+            falsePositives.incrementAndGet();
+        } // end of if statement
+        if (!pending.add(key(customer))) {
+            // Another thread admitted the same customer in the meantime.
+            rejected.incrementAndGet();
+            return false;
+        } // end of if statement
+        add(customer);
+        return true;
+    } // end of admit method
+
+    /**
+     * Stops holding an admitted customer as pending, once their insert has been committed or
+     * has failed.  Either way, the database now answers for them.
+     * @param customer  A customer that was admitted.
+     */
+    public void committed(Customers customer) {
+        pending.remove(key(customer));
+    } // end of committed method
+
+    /**
+     * @return  false if the customer has certainly not been added, true if they might have been.
+     */
+    private boolean mightContain(Customers customer) {
+        long hash = hash(customer);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            } // end of if statement
+        } // end of for loop
+        return true;
+    } // end of mightContain method
+
+    /**
+     * A 64 bit FNV-1a hash of the first name, last name and phone number, mixed so that every
+     * bit depends on every character.  The bits that a customer sets are hash, hash + step,
+     * hash + 2 * step and so on, with step worked out from the same hash.
+     */
+    private static long hash(Customers customer) {
+        long hash = 0xCBF29CE484222325L;
+        hash = hash(hash, customer.getFirst_name());
+        hash = hash(hash, customer.getLast_name());
+        hash = hash(hash, customer.getPhone());
+        return mix(hash);
+    } // end of hash method
+
+    private static long hash(long hash, String value) {
+        String text = String.valueOf(value);
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001B3L;
+        } // end of for loop
+        return (hash ^ SEPARATOR) * 0x100000001B3L;
+    } // end of hash method
+
+    /** The finalizer of MurmurHash3. */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    } // end of mix method
+
+    private static String key(Customers customer) {
+        return customer.getFirst_name() + SEPARATOR + customer.getLast_name() + SEPARATOR + customer.getPhone();
+    } // end of key method
+
+    /**
+     * Checks for a duplicate with the CustomerByNameAndPhone query, which is answered from the
+     * index behind the unique constraint, so it finds at most one customer.  Customers that have
+     * been persisted but not committed are not seen; admit covers those.  The query is left as
+     * it is declared: limiting it to one row or changing its flush mode makes EclipseLink copy
+     * it every time, which more than doubles the cost of a lookup.
+     * @param manager   The EntityManager to run the query in.  Use one that has no changes
+     *                  waiting to be flushed, such as one set aside for the lookups.
+     * @return          Whether there is already a customer with the same names and phone.
+     */
+    public static Predicate<Customers> existsIn(EntityManager manager) {
+        return customer -> !manager.createNamedQuery("CustomerByNameAndPhone", Long.class)
+                .setParameter("firstName", customer.getFirst_name())
+                .setParameter("lastName", customer.getLast_name())
+                .setParameter("phone", customer.getPhone())
+                .getResultList().isEmpty();
+    } // end of existsIn method
+
+    /**
+     * @return  The number of customers that have been added, either loaded or admitted.
+     */
+    public long size() {
+        return customers.get();
+    }
+
+    /**
+     * @return  The number of customers checked by admit.
+     */
+    public long getChecked() {
+        return checked.get();
+    }
+
+    /**
+     * @return  The number of duplicates turned away, which is the number of failed inserts avoided.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return  The number of checks that had to go to the database.
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return  The number of database lookups that found no duplicate after all.
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateCustomerFilter: " + customers.get() + " customers, " + checked.get() + " checked, " +
+                rejected.get() + " duplicates rejected, " + lookups.get() + " database lookups, " +
+                falsePositives.get() + " false positives";
+    }
+} // End of DuplicateCustomerFilter class
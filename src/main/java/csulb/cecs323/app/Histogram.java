@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of non-negative values, such as query latencies in microseconds.
+ * <p>
+ * Each power of two is split into four buckets, so a percentile is reported to within 25% of
+ * the true value, using 256 counters no matter how many values are recorded.  The count, sum
+ * and maximum are exact.  Recording is lock-free, so any number of threads can record at once.
+ * </p>
+ */
+public class Histogram implements HistogramMBean {
+    /** Buckets per power of two. */
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /** Number of values recorded in each bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(64 << SUB_BUCKET_BITS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a value.
+     * @param value The value, which is treated as 0 if negative.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    } // end of record method
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile.
+     * @param percentile    Between 0 and 100.
+     * @return              The largest value that falls in the same bucket as the percentile,
+     *                      but never more than the maximum; 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        } // end of if statement
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            } // end of if statement
+        } // end of for loop
+        return max.get();
+    } // end of getPercentile method
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        } // end of for loop
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    } // end of reset method
+
+    /**
+     * Finds the bucket for a value: the position of its highest bit, followed by the next
+     * SUB_BUCKET_BITS bits.  Values small enough to have no more bits than that get a bucket each.
+     * @param value A non-negative value.
+     * @return      The index of its bucket.
+     */
+    private static int bucketOf(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent <= SUB_BUCKET_BITS) {
+            return (int) value;
+        } // end of if statement
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return (exponent << SUB_BUCKET_BITS) + subBucket;
+    } // end of bucketOf method
+
+    /**
+     * @param bucket    The index of a bucket.
+     * @return          The largest value that goes in that bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        int exponent = bucket >>> SUB_BUCKET_BITS;
+        if (exponent <= SUB_BUCKET_BITS) {
+            return bucket;
+        } // end of if statement
+        long subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = ((1L << SUB_BUCKET_BITS) | subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    } // end of upperBoundOf method
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " p50=" + getP50() + " p99=" + getP99() + " max=" + getMax();
+    }
+} // End of Histogram class
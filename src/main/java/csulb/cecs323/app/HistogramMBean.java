@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+/**
+ * The JMX view of a Histogram.  Values are in whatever unit was recorded, which is given by
+ * the unit key of the MBean's ObjectName.
+ */
+public interface HistogramMBean {
+    long getCount();
+
+    double getMean();
+
+    long getP50();
+
+    long getP99();
+
+    long getMax();
+
+    void reset();
+} // End of HistogramMBean interface
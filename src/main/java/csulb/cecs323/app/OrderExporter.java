@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Writes every order line, together with its order and product, out to a CSV file.
+ * <p>
+ * The columns are customer_id, order_date, sold_by, UPC, prod_name, quantity and
+ * unit_sale_price, after a header line with those names.  Values are quoted the same way
+ * that BulkImporter reads them.
+ * </p>
+ * <p>
+ * The rows are read with the ExportOrderLines query, which selects plain values rather than
+ * entities, from ORDER_LINES joined to just ORDERS and PRODUCTS, through a database cursor (see QueryStreams) that fetches pageSize rows at a time.
+ * Nothing is kept once it has been written, so the memory used is the same for a thousand
+ * lines as for tens of millions.  The file is written through a large buffer straight onto
+ * a FileChannel.
+ * </p>
+ */
+public class OrderExporter {
+    /** Where the export gets its EntityManager. */
+    private final EntityManagerFactory factory;
+
+    /** How many rows to fetch from the database at a time. */
+    private final int pageSize;
+
+    /** Size of the buffer in front of the file, in chars. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Column names, in the order that the ExportOrderLines query selects them. */
+    private static final String HEADER = "customer_id,order_date,sold_by,UPC,prod_name,quantity,unit_sale_price";
+
+    private static final Logger LOGGER = Logger.getLogger(OrderExporter.class.getName());
+
+    /**
+     * Constructor for the OrderExporter.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param pageSize  How many rows to fetch from the database at a time.
+     */
+    public OrderExporter(EntityManagerFactory factory, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size has to be greater than 0");
+        } // end of if statement
+        this.factory = factory;
+        this.pageSize = pageSize;
+    } // end of OrderExporter()
+
+    /**
+     * Exports every order line to a file, replacing the file if it is already there.
+     * @param file  Where to write the CSV.
+     * @return      The number of order lines exported.
+     * @throws IOException  If the file cannot be written.
+     */
+    public long exportCsv(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return exportCsv(out);
+        } // end of try-with-resources
+    } // end of exportCsv method
+
+    /**
+     * Exports every order line.  The writer is not closed.
+     * @param out   Where to write the CSV.
+     * @return      The number of order lines exported.
+     * @throws IOException  If the output cannot be written.
+     */
+    public long exportCsv(Writer out) throws IOException {
+        long exported = 0;
+        long started = System.nanoTime();
+        EntityManager manager = factory.createEntityManager();
+        try (Stream<Object[]> rows = QueryStreams.stream(manager.createNamedQuery("ExportOrderLines"),
+                Object[].class, pageSize)) {
+            out.write(HEADER);
+            out.write('\n');
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                for (int i = 0; i < row.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    } // end of if statement
+                    writeValue(out, row[i]);
+                } // end of for loop
+                out.write('\n');
+                exported++;
+            } // end of while loop
+            out.flush();
+        } finally {
+            manager.close();
+        } // end of try/finally
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        LOGGER.info("Exported " + exported + " order lines in " + millis + " ms (" +
+                (exported * 1000 / millis) + " rows/s)");
+        return exported;
+    } // end of exportCsv method
+
+    /**
+     * Writes one value, quoting it if it contains a comma, a double quote or a line break.
+     * @param out   Where to write it.
+     * @param value The value, which may be null.
+     * @throws IOException  If the output cannot be written.
+     */
+    static void writeValue(Writer out, Object value) throws IOException {
+        if (value == null) {
+            return;
+        } // end of if statement
+        // A native query reads the dates as Timestamps; write them the way LocalDateTime does.
+        String text = value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime().toString() : value.toString();
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        } // end of for loop
+        if (!quote) {
+            out.write(text);
+            return;
+        } // end of if statement
+        out.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            } // end of if statement
+            out.write(c);
+        } // end of for loop
+        out.write('"');
+    } // end of writeValue method
+
+    /**
+     * Command line entry point.
+     * @param args  The path of the CSV file to write, and optionally the page size (1000 by
+     *              default).
+     * @throws IOException  If the file cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: OrderExporter <file.csv> [page size]");
+            return;
+        } // end of if statement
+        int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrders");
+        try {
+            long count = new OrderExporter(factory, pageSize).exportCsv(Paths.get(args[0]));
+            System.out.println("Exported " + count + " order lines");
+        } finally {
+            factory.close();
+        } // end of try/finally
+    } // End of the main method
+} // End of OrderExporter class
@@ -0,0 +1,296 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Orders;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory queue of orders waiting to be placed, with a single writer thread that places
+ * them in groups.
+ * <p>
+ * Submitting an order only puts it on the queue; the caller gets back a CompletableFuture that
+ * completes once the order has been committed, or completes exceptionally if it could not be
+ * placed.  The writer takes whatever is waiting, up to maxGroupSize orders, waiting at most
+ * maxWaitMillis for more to arrive after the first one, and places the whole group with
+ * OrderService.placeOrders: one transaction, one flush and one commit for all of them.  A
+ * commit costs about the same whether it holds one order or a hundred, so under load this
+ * commits many more orders per second, at the price of a few milliseconds of latency.
+ * </p>
+ * <p>
+ * If the group cannot be committed, for instance because one of its orders asks for more than
+ * is in stock, nothing in it was placed.  The writer then places the orders one at a time, so
+ * that only the orders that are really at fault fail.  When the queue is full, submit blocks
+ * until there is room, which keeps a burst from using up all of the memory.
+ * </p>
+ */
+public class OrderIntake implements AutoCloseable {
+    /** Places the orders. */
+    private final OrderService orderService;
+
+    /** Orders waiting for the writer. */
+    private final BlockingQueue<Pending> queue;
+
+    /** The most orders that the writer commits at once. */
+    private final int maxGroupSize;
+
+    /** How long the writer waits for a group to fill up, after its first order arrives. */
+    private final long maxWaitNanos;
+
+    /** Takes orders off of the queue and commits them. */
+    private final Thread writer;
+
+    /** Set once no more orders are accepted. */
+    private volatile boolean closed;
+
+    /** Number of groups committed in one transaction. */
+    private final AtomicLong groups = new AtomicLong();
+
+    /** Number of orders committed as part of a group. */
+    private final AtomicLong grouped = new AtomicLong();
+
+    /** Number of groups that failed, and were placed one order at a time. */
+    private final AtomicLong splits = new AtomicLong();
+
+    /** Number of orders that could not be placed at all. */
+    private final AtomicLong failed = new AtomicLong();
+
+    private static final Logger LOGGER = Logger.getLogger(OrderIntake.class.getName());
+
+    /**
+     * An order on the queue, and whoever is waiting for it.
+     */
+    private static class Pending {
+        final OrderRequest request;
+        final CompletableFuture<Orders> result = new CompletableFuture<>();
+
+        Pending(OrderRequest request) {
+            this.request = request;
+        }
+    } // End of Pending class
+
+    /**
+     * Constructor for the OrderIntake, which starts its writer thread.
+     * @param orderService  Places the orders.
+     * @param capacity      The most orders that can be waiting at once.
+     * @param maxGroupSize  The most orders to commit in one transaction.
+     * @param maxWaitMillis How long to wait for a group to fill up.  0 commits whatever is
+     *                      waiting right away.
+     */
+    public OrderIntake(OrderService orderService, int capacity, int maxGroupSize, long maxWaitMillis) {
+        if (capacity <= 0 || maxGroupSize <= 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Capacity and group size have to be greater than 0");
+        } // end of if statement
+        this.orderService = orderService;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxGroupSize = maxGroupSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.writer = new Thread(this::run, "order-intake");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    } // end of OrderIntake()
+
+    /**
+     * Queues an order for an existing customer, dated right now.
+     * @param customerId    The customer placing the order.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              Completes with the order once it has been committed.
+     * @throws IllegalStateException    If the intake has been closed.
+     */
+    public CompletableFuture<Orders> submit(long customerId, Map<String, Integer> lines, String soldBy) {
+        return submit(new OrderRequest(customerId, LocalDateTime.now(), lines, soldBy));
+    } // end of submit method
+
+    /**
+     * Queues an order, waiting for room on the queue if it is full.
+     * @param request   The order to place.
+     * @return          Completes with the order once it has been committed.
+     * @throws IllegalStateException    If the intake has been closed.  If it is closed while
+     *                                  the order is being queued, the future completes with it
+     *                                  instead, unless the writer has already taken the order.
+     */
+    public CompletableFuture<Orders> submit(OrderRequest request) {
+        if (closed || !writer.isAlive()) {
+            throw new IllegalStateException("The order intake has been closed");
+        } // end of if statement
+        Pending pending = new Pending(request);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.completeExceptionally(e);
+        } // end of try/catch
+        // close can come between the check above and the put, and the writer can see an empty
+        // queue and stop before the order lands on it.  The writer only stops once closed is
+        // set, so checking again after the put catches that.  If the order is still on the
+        // queue then, it may never be taken, so take it back and fail it; if it is gone, the
+        // writer has it and will complete it.
+        if ((closed || !writer.isAlive()) && queue.remove(pending)) {
+            pending.result.completeExceptionally(new IllegalStateException("The order intake has been closed"));
+        } // end of if statement
+        return pending.result;
+    } // end of submit method
+
+    /**
+     * The writer thread: takes groups of orders off of the queue and commits them, until the
+     * intake is closed and the queue is empty.
+     */
+    private void run() {
+        List<Pending> group = new ArrayList<>(maxGroupSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                } // end of if statement
+                group.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (group.size() < maxGroupSize) {
+                    queue.drainTo(group, maxGroupSize - group.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (group.size() >= maxGroupSize || remaining <= 0) {
+                        break;
+                    } // end of if statement
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    } // end of if statement
+                    group.add(next);
+                } // end of while loop
+            } catch (InterruptedException e) {
+                // Nothing here interrupts the writer, which notices close through closed; if
+                // something else does, finish what has been taken off the queue and carry on.
+            } // end of try/catch
+            if (!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            } // end of if statement
+        } // end of while loop
+    } // end of run method
+
+    /**
+     * Commits a group of orders and lets their submitters know.  If the group fails as a
+     * whole, the orders are placed one at a time instead.
+     * @param group The orders taken off of the queue.
+     */
+    private void commit(List<Pending> group) {
+        List<OrderRequest> requests = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            requests.add(pending.request);
+        } // end of for loop
+        List<Orders> orders;
+        try {
+            orders = orderService.placeOrders(requests);
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                // Nothing to split up; let placeOrder retry a lock conflict, or report the error.
+                placeOne(group.get(0));
+            } else {
+                splits.incrementAndGet();
+                LOGGER.log(Level.FINE, "Group of " + group.size() + " orders failed, placing them one at a time", e);
+                for (Pending pending : group) {
+                    placeOne(pending);
+                } // end of for loop
+            } // end of if/else statement
+            return;
+        } // end of try/catch
+        groups.incrementAndGet();
+        grouped.addAndGet(orders.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(orders.get(i));
+        } // end of for loop
+    } // end of commit method
+
+    /**
+     * Places one order in a transaction of its own.
+     * @param pending   The order, and whoever is waiting for it.
+     */
+    private void placeOne(Pending pending) {
+        OrderRequest request = pending.request;
+        try {
+            pending.result.complete(orderService.placeOrder(request.getCustomerId(), request.getOrderDate(),
+                    request.getLines(), request.getSoldBy()));
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            pending.result.completeExceptionally(e);
+        } // end of try/catch
+    } // end of placeOne method
+
+    /**
+     * Stops accepting orders, and waits for the writer to commit the ones already queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } // end of try/catch
+    } // end of close method
+
+    /**
+     * @return  Number of orders waiting to be placed.
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return  Number of groups committed in one transaction.
+     */
+    public long getGroups() {
+        return groups.get();
+    }
+
+    /**
+     * @return  Average number of orders in each group that was committed.
+     */
+    public double getAverageGroupSize() {
+        long count = groups.get();
+        return count == 0 ? 0 : (double) grouped.get() / count;
+    }
+
+    /**
+     * @return  Number of groups that failed, and were placed one order at a time.
+     */
+    public long getSplits() {
+        return splits.get();
+    }
+
+    /**
+     * @return  Number of orders that could not be placed at all.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "OrderIntake: " + queue.size() + " queued, " + groups + " groups, average " +
+                String.format("%.1f", getAverageGroupSize()) + " orders per group, " + splits + " splits, " +
+                failed + " failed";
+    }
+} // End of OrderIntake class
@@ -0,0 +1,276 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A read-only copy of every order line, held column by column in arrays of primitives, for
+ * analytics that scan all of the lines over and over.
+ * <p>
+ * Line i of the snapshot is made up of element i of each column: the customer, the product,
+ * when the order was placed (in epoch seconds), the quantity and the unit sale price in cents.
+ * Customers and products are dictionary encoded: the column holds a small int that indexes
+ * the list of distinct customer ids or UPCs, rather than a reference to an entity or a String.
+ * That comes to 28 bytes per line, with no objects per line at all, so scanning the lines is
+ * a tight loop over a few arrays.
+ * </p>
+ * <p>
+ * Prices are kept in whole cents so that revenue adds up exactly.  The snapshot is not kept
+ * up to date with new orders; load a new one when the numbers need to be current.
+ * </p>
+ */
+public class OrderLineSnapshot {
+    /** Number of order lines.  The columns can be longer than this; the rest is unused. */
+    private final int size;
+
+    /** Index into customerIds of the customer that placed each line's order. */
+    private final int[] customers;
+
+    /** Index into upcs of each line's product. */
+    private final int[] products;
+
+    /** When each line's order was placed, in seconds since the epoch, local time. */
+    private final long[] orderSeconds;
+
+    /** How many units each line is for. */
+    private final int[] quantities;
+
+    /** The unit sale price of each line, in cents. */
+    private final long[] priceCents;
+
+    /** The distinct customer ids, indexed by the customers column. */
+    private final long[] customerIds;
+
+    /** The distinct UPCs, indexed by the products column. */
+    private final String[] upcs;
+
+    /** How many lines to make room for at first. */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private static final Logger LOGGER = Logger.getLogger(OrderLineSnapshot.class.getName());
+
+    private OrderLineSnapshot(int size, int[] customers, int[] products, long[] orderSeconds, int[] quantities,
+                              long[] priceCents, long[] customerIds, String[] upcs) {
+        this.size = size;
+        this.customers = customers;
+        this.products = products;
+        this.orderSeconds = orderSeconds;
+        this.quantities = quantities;
+        this.priceCents = priceCents;
+        this.customerIds = customerIds;
+        this.upcs = upcs;
+    } // end of OrderLineSnapshot()
+
+    /**
+     * Reads every order line into a new snapshot.  The lines are read through a database cursor,
+     * pageSize at a time, so only the arrays themselves take up memory.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param pageSize  How many rows to fetch from the database at a time.
+     * @return          The snapshot.
+     */
+    public static OrderLineSnapshot load(EntityManagerFactory factory, int pageSize) {
+        long started = System.nanoTime();
+        int capacity = INITIAL_CAPACITY;
+        int size = 0;
+        int[] customers = new int[capacity];
+        int[] products = new int[capacity];
+        long[] orderSeconds = new long[capacity];
+        int[] quantities = new int[capacity];
+        long[] priceCents = new long[capacity];
+        Map<Long, Integer> customerIndex = new HashMap<>();
+        List<Long> customerIds = new ArrayList<>();
+        Map<String, Integer> productIndex = new HashMap<>();
+        List<String> upcs = new ArrayList<>();
+
+        EntityManager manager = factory.createEntityManager();
+        try (Stream<Object[]> rows = QueryStreams.stream(manager.createNamedQuery("SnapshotOrderLines"),
+                Object[].class, pageSize)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                if (size == capacity) {
+                    capacity *= 2;
+                    customers = Arrays.copyOf(customers, capacity);
+                    products = Arrays.copyOf(products, capacity);
+                    orderSeconds = Arrays.copyOf(orderSeconds, capacity);
+                    quantities = Arrays.copyOf(quantities, capacity);
+                    priceCents = Arrays.copyOf(priceCents, capacity);
+                } // end of if statement
+                long customerId = ((Number) row[0]).longValue();
+                Integer customer = customerIndex.get(customerId);
+                if (customer == null) {
+                    customer = customerIds.size();
+                    customerIndex.put(customerId, customer);
+                    customerIds.add(customerId);
+                } // end of if statement
+                String upc = (String) row[2];
+                Integer product = productIndex.get(upc);
+                if (product == null) {
+                    product = upcs.size();
+                    productIndex.put(upc, product);
+                    upcs.add(upc);
+                } // end of if statement
+                customers[size] = customer;
+                products[size] = product;
+                orderSeconds[size] = ((Timestamp) row[1]).getTime() / 1000;
+                quantities[size] = ((Number) row[3]).intValue();
+                priceCents[size] = Math.round(((Number) row[4]).doubleValue() * 100);
+                size++;
+            } // end of while loop
+        } finally {
+            manager.close();
+        } // end of try/finally
+
+        long[] customerArray = new long[customerIds.size()];
+        for (int i = 0; i < customerArray.length; i++) {
+            customerArray[i] = customerIds.get(i);
+        } // end of for loop
+        // The columns are not trimmed to size: copying them would need twice the memory at the end.
+        OrderLineSnapshot snapshot = new OrderLineSnapshot(size, customers, products, orderSeconds, quantities,
+                priceCents, customerArray, upcs.toArray(new String[0]));
+        LOGGER.info("Loaded " + snapshot + " in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        return snapshot;
+    } // end of load method
+
+    /**
+     * @return  Number of order lines in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return  Total of quantity * unit_sale_price over every line, in cents.
+     */
+    public long getRevenueCents() {
+        long revenue = 0;
+        for (int i = 0; i < size; i++) {
+            revenue += quantities[i] * priceCents[i];
+        } // end of for loop
+        return revenue;
+    } // end of getRevenueCents method
+
+    /**
+     * @return  Total quantity over every line.
+     */
+    public long getUnitsSold() {
+        long units = 0;
+        for (int i = 0; i < size; i++) {
+            units += quantities[i];
+        } // end of for loop
+        return units;
+    } // end of getUnitsSold method
+
+    /**
+     * Finds the products that brought in the most revenue.
+     * @param k     How many products to return.
+     * @return      Up to k products, most revenue first.
+     */
+    public List<SalesTotal> getTopProducts(int k) {
+        return getTopProducts(k, Long.MIN_VALUE, Long.MAX_VALUE);
+    } // end of getTopProducts method
+
+    /**
+     * Finds the products that brought in the most revenue from orders placed from one date up
+     * to, but not including, another.
+     * @param k     How many products to return.
+     * @param from  The first date to include.
+     * @param to    The first date not to include.
+     * @return      Up to k products, most revenue first.
+     */
+    public List<SalesTotal> getTopProducts(int k, LocalDateTime from, LocalDateTime to) {
+        return getTopProducts(k, Timestamp.valueOf(from).getTime() / 1000, Timestamp.valueOf(to).getTime() / 1000);
+    } // end of getTopProducts method
+
+    /**
+     * Adds up each product's lines, units and revenue in one pass over the columns, then keeps
+     * the k products with the most revenue in a heap, rather than sorting all of them.
+     */
+    private List<SalesTotal> getTopProducts(int k, long fromSeconds, long toSeconds) {
+        long[] lines = new long[upcs.length];
+        long[] units = new long[upcs.length];
+        long[] revenue = new long[upcs.length];
+        for (int i = 0; i < size; i++) {
+            long seconds = orderSeconds[i];
+            if (seconds >= fromSeconds && seconds < toSeconds) {
+                int product = products[i];
+                lines[product]++;
+                units[product] += quantities[i];
+                revenue[product] += quantities[i] * priceCents[i];
+            } // end of if statement
+        } // end of for loop
+
+        // The heap holds the best k seen so far, with the least revenue of them on top.
+        PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, k),
+                (a, b) -> Long.compare(revenue[a], revenue[b]));
+        for (int product = 0; product < upcs.length && k > 0; product++) {
+            if (lines[product] == 0) {
+                continue;
+            } // end of if statement
+            if (top.size() < k) {
+                top.add(product);
+            } else if (revenue[product] > revenue[top.peek()]) {
+                top.poll();
+                top.add(product);
+            } // end of if/else statement
+        } // end of for loop
+        SalesTotal[] totals = new SalesTotal[top.size()];
+        for (int i = totals.length - 1; i >= 0; i--) {
+            int product = top.poll();
+            totals[i] = new SalesTotal(upcs[product], lines[product], units[product], revenue[product] / 100.0);
+        } // end of for loop
+        return Arrays.asList(totals);
+    } // end of getTopProducts method
+
+    /**
+     * Estimates how much memory the snapshot takes up: the columns, plus the dictionaries of
+     * customer ids and UPCs.
+     * @return  The approximate size in bytes.
+     */
+    public long getBytes() {
+        long bytes = (long) customers.length * (Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES);
+        bytes += (long) customerIds.length * Long.BYTES;
+        for (String upc : upcs) {
+            // A reference, plus the String and its bytes, roughly.
+            bytes += 8 + 40 + upc.length();
+        } // end of for loop
+        return bytes;
+    } // end of getBytes method
+
+    /**
+     * @return  The approximate size of the snapshot in bytes for every million lines in it.
+     */
+    public long getBytesPerMillionLines() {
+        return size == 0 ? 0 : getBytes() * 1_000_000 / size;
+    } // end of getBytesPerMillionLines method
+
+    @Override
+    public String toString() {
+        return "OrderLineSnapshot: " + size + " lines, " + customerIds.length + " customers, " + upcs.length +
+                " products, " + getBytes() / 1024 + " KB (" + getBytesPerMillionLines() / (1024 * 1024) +
+                " MB per million lines)";
+    }
+} // End of OrderLineSnapshot class
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Everything that is needed to place one order, before it has been placed.
+ */
+public class OrderRequest {
+    /** The customer placing the order. */
+    private final long customerId;
+
+    /** When the order was placed. */
+    private final LocalDateTime orderDate;
+
+    /** Quantity desired for each product, keyed by UPC. */
+    private final Map<String, Integer> lines;
+
+    /** Name of the sales person. */
+    private final String soldBy;
+
+    /**
+     * Constructor for an OrderRequest.
+     * @param customerId    The customer placing the order.
+     * @param orderDate     When the order was placed.
+     * @param lines         Quantity desired for each product, keyed by UPC.  This is copied.
+     * @param soldBy        Name of the sales person.
+     */
+    public OrderRequest(long customerId, LocalDateTime orderDate, Map<String, Integer> lines, String soldBy) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one line");
+        } // end of if statement
+        this.customerId = customerId;
+        this.orderDate = orderDate;
+        this.lines = Collections.unmodifiableMap(new LinkedHashMap<>(lines));
+        this.soldBy = soldBy;
+    } // end of OrderRequest()
+
+    /**
+     * @return customerId
+     */
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * @return orderDate
+     */
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    /**
+     * @return lines, which cannot be modified
+     */
+    public Map<String, Integer> getLines() {
+        return lines;
+    }
+
+    /**
+     * @return soldBy
+     */
+    public String getSoldBy() {
+        return soldBy;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderRequest: customer " + customerId + ", on " + orderDate + ", " + lines.size() + " lines";
+    }
+} // End of OrderRequest class
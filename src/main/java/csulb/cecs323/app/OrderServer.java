@@ -0,0 +1,492 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Order_summaries;
+import csulb.cecs323.model.Orders;
+import csulb.cecs323.model.Products;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small HTTP front end for the same customers, products and orders as the console program,
+ * built on the HTTP server that comes with the JDK.  Every response is JSON.
+ * <pre>
+ *   GET  /customers?after=0&amp;limit=100  one page of customers, in customer_id order: just their
+ *                                        names and phone numbers
+ *   GET  /customers/{id}                 one customer
+ *   GET  /customers/{id}/summary         how many orders they have placed, and for how much
+ *   GET  /products?after=&amp;limit=100    one page of products, in UPC order
+ *   GET  /products?q=samsung+tv&amp;limit=20 the products that best match a search
+ *   GET  /products/{upc}                 one product
+ *   POST /orders                         places an order, from a form such as
+ *                                        customer=1&amp;soldBy=Pat&amp;line=2345678:2&amp;line=98763:1
+ * </pre>
+ * <p>
+ * Each request is handled on a thread of its own: a virtual thread when the JDK has them
+ * (Java 21 and later), otherwise a thread from a cached pool.  A request that places an order
+ * just waits on its thread until the order intake has committed it, which is cheap on a
+ * virtual thread, so thousands of clients can be waiting at once while the orders are being
+ * committed in groups.  Products are read through one shared ProductCatalog, and customers
+ * through the shared cache, so reads do not have to go to the database either.
+ * </p>
+ */
+public class OrderServer {
+    /** Creates the short-lived EntityManagers used to read customers and products. */
+    private final EntityManagerFactory factory;
+
+    /** Every product, kept in memory and shared by all of the requests. */
+    private final ProductCatalog catalog;
+
+    /** Full text search over the products. */
+    private final ProductSearch search;
+
+    /** Takes the orders and commits them in groups. */
+    private final OrderIntake intake;
+
+    /** Runs each request on a thread of its own. */
+    private final ExecutorService executor;
+
+    /** The JDK's HTTP server. */
+    private final HttpServer server;
+
+    /** Largest page of customers that one request can ask for. */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /** How many connections can be waiting to be accepted at once. */
+    private static final int BACKLOG = 4096;
+
+    private static final Logger LOGGER = Logger.getLogger(OrderServer.class.getName());
+
+    /**
+     * Constructor for the OrderServer.  The server does not accept requests until it is started.
+     * @param factory   The EntityManagerFactory, normally for the CustomerOrdersServer unit.
+     * @param catalog   The product catalog to read products from.
+     * @param search    The product search, with every product in it.
+     * @param intake    Places the orders.
+     * @param port      The port to listen on, or 0 for any free port.
+     * @throws IOException  If the port cannot be opened.
+     */
+    public OrderServer(EntityManagerFactory factory, ProductCatalog catalog, ProductSearch search,
+                       OrderIntake intake, int port) throws IOException {
+        this.factory = factory;
+        this.catalog = catalog;
+        this.search = search;
+        this.intake = intake;
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        this.server.setExecutor(executor);
+        this.server.createContext("/customers", exchange -> handle(exchange, "GET", this::customers));
+        this.server.createContext("/products", exchange -> handle(exchange, "GET", this::products));
+        this.server.createContext("/orders", exchange -> handle(exchange, "POST", this::orders));
+    } // end of OrderServer()
+
+    /**
+     * Starts the server with the CustomerOrdersServer persistence unit.
+     * @param args  The port to listen on, 8080 if it is not given.
+     * @throws IOException  If the port cannot be opened.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        DatabaseImage.installIfConfigured();
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CustomerOrdersServer");
+        ProductCatalog catalog = new ProductCatalog(CustomerOrders.CATALOG_CAPACITY,
+                upc -> read(factory, manager -> PersistenceMetrics.find(manager, Products.class, upc)),
+                (after, limit) -> read(factory, manager -> manager.createNamedQuery("ProductsAfter", Products.class)
+                        .setParameter("lastUPC", after)
+                        .setMaxResults(limit)
+                        .getResultList()));
+        ProductSearch search = new ProductSearch();
+        catalog.forEachPage(MAX_PAGE_SIZE, search::putAll);
+        OrderIntake intake = new OrderIntake(new OrderService(factory, catalog), 10_000, 200, 5);
+        OrderServer server = new OrderServer(factory, catalog, search, intake, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            intake.close();
+            factory.close();
+        }));
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    } // end of main method
+
+    /**
+     * Creates the executor that runs the requests: one virtual thread per request if this JDK
+     * has virtual threads, otherwise a cached pool of platform threads.  Virtual threads are
+     * looked up by reflection, so that this still compiles and runs on older JDKs.
+     * @return  The executor for the requests.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.info("Virtual threads are not available, handling requests on a cached thread pool");
+            return Executors.newCachedThreadPool();
+        } // end of try/catch
+    } // end of newRequestExecutor method
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, and lets the ones in progress finish.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return  The port that the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers one kind of request.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        /**
+         * @param exchange  The request.
+         * @return          The status code and JSON body of the response.
+         */
+        Response handle(HttpExchange exchange) throws IOException;
+    } // End of Handler interface
+
+    /**
+     * The status code and JSON body of a response.
+     */
+    private static class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    } // End of Response class
+
+    /**
+     * Checks the method, runs the handler and sends its response.  Exceptions are turned into
+     * error responses: 400 for a bad request, 404 for something that does not exist, 409 when
+     * there is not enough stock, and 500 for anything else.
+     * @param exchange  The request.
+     * @param method    The only HTTP method that this path accepts.
+     * @param handler   Answers the request.
+     */
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        Response response;
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                response = Response.error(405, "Use " + method);
+            } else {
+                response = handler.handle(exchange);
+            } // end of if/else statement
+        } catch (IllegalArgumentException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (IllegalStateException e) {
+            response = Response.error(409, e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to answer " + exchange.getRequestURI(), e);
+            response = Response.error(500, "Internal error");
+        } // end of try/catch
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        } // end of try-with-resources
+    } // end of handle method
+
+    /**
+     * GET /customers?after=&amp;limit=, GET /customers/{id} or GET /customers/{id}/summary
+     */
+    private Response customers(HttpExchange exchange) {
+        String id = pathId(exchange.getRequestURI(), "/customers");
+        if (id != null && id.endsWith("/summary")) {
+            long customerId = parseLong(id.substring(0, id.length() - "/summary".length()), "customer id");
+            Order_summaries summary = read(factory, manager -> manager.find(Order_summaries.class, customerId));
+            return summary == null ? Response.error(404, "No orders for customer " + customerId)
+                    : new Response(200, toJson(summary));
+        } else if (id != null) {
+            long customerId = parseLong(id, "customer id");
+            Customers customer = read(factory, manager -> PersistenceMetrics.find(manager, Customers.class, customerId));
+            return customer == null ? Response.error(404, "No customer with id " + id)
+                    : new Response(200, toJson(customer));
+        } // end of if statement
+        Map<String, List<String>> query = parseForm(exchange.getRequestURI().getRawQuery());
+        long after = parseLong(first(query, "after", "0"), "after");
+        int limit = (int) Math.min(parseLong(first(query, "limit", "100"), "limit"), MAX_PAGE_SIZE);
+        List<Customers> page = read(factory, manager -> manager.createNamedQuery("CustomersAfter", Customers.class)
+                .setParameter("lastId", after)
+                .setHint(QueryHints.FETCH_GROUP_NAME, Customers.LIST)
+                .setMaxResults(limit)
+                .getResultList());
+        StringBuilder json = new StringBuilder("[");
+        for (Customers customer : page) {
+            json.append(json.length() > 1 ? "," : "").append(toListJson(customer));
+        } // end of for loop
+        return new Response(200, json.append(']').toString());
+    } // end of customers method
+
+    /**
+     * GET /products?after=&amp;limit=, GET /products?q= or GET /products/{upc}
+     */
+    private Response products(HttpExchange exchange) {
+        String upc = pathId(exchange.getRequestURI(), "/products");
+        if (upc != null) {
+            Products product = catalog.get(upc);
+            return product == null ? Response.error(404, "No product with UPC " + upc)
+                    : new Response(200, toJson(product));
+        } // end of if statement
+        Map<String, List<String>> query = parseForm(exchange.getRequestURI().getRawQuery());
+        if (query.containsKey("q")) {
+            int limit = (int) Math.min(parseLong(first(query, "limit", "20"), "limit"), MAX_PAGE_SIZE);
+            StringBuilder json = new StringBuilder("[");
+            for (ProductMatch match : search.search(first(query, "q", ""), limit)) {
+                json.append(json.length() > 1 ? "," : "").append(toJson(match));
+            } // end of for loop
+            return new Response(200, json.append(']').toString());
+        } // end of if statement
+        String after = first(query, "after", "");
+        int limit = (int) Math.min(parseLong(first(query, "limit", "100"), "limit"), MAX_PAGE_SIZE);
+        StringBuilder json = new StringBuilder("[");
+        for (Products product : catalog.getPage(after, limit)) {
+            json.append(json.length() > 1 ? "," : "").append(toJson(product));
+        } // end of for loop
+        return new Response(200, json.append(']').toString());
+    } // end of products method
+
+    /**
+     * POST /orders, with the customer, the sales person and one line=UPC:quantity per product.
+     */
+    private Response orders(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> form;
+        try (InputStream in = exchange.getRequestBody()) {
+            form = parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } // end of try-with-resources
+        long customerId = parseLong(first(form, "customer", null), "customer");
+        String soldBy = first(form, "soldBy", null);
+        if (soldBy == null || soldBy.isEmpty()) {
+            throw new IllegalArgumentException("Missing soldBy");
+        } // end of if statement
+        Map<String, Integer> lines = new LinkedHashMap<>();
+        for (String line : form.getOrDefault("line", List.of())) {
+            int colon = line.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Each line has to be UPC:quantity, not " + line);
+            } // end of if statement
+            String upc = line.substring(0, colon);
+            lines.merge(upc, parseInt(line.substring(colon + 1), "quantity"), (a, b) -> {
+                try {
+                    return Math.addExact(a, b);
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException("Quantity of " + upc + " is too large");
+                } // end of try/catch
+            });
+        } // end of for loop
+
+        Orders order;
+        try {
+            order = intake.submit(customerId, lines, soldBy).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error(503, "Interrupted while placing the order");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } // end of if statement
+            throw new IllegalStateException(e.getCause());
+        } // end of try/catch
+        return new Response(201, "{\"customer_id\":" + order.getCustomer().getCustomer_id() +
+                ",\"order_date\":" + quote(order.getOrder_date().toString()) +
+                ",\"sold_by\":" + quote(order.getSold_by()) +
+                ",\"lines\":" + lines.size() + "}");
+    } // end of orders method
+
+    /**
+     * Runs a read with an EntityManager of its own, since EntityManagers cannot be shared
+     * between threads.
+     * @param factory   Creates the EntityManager.
+     * @param read      What to read.
+     * @return          Whatever was read.
+     */
+    private static <T> T read(EntityManagerFactory factory, Function<EntityManager, T> read) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            return read.apply(manager);
+        } finally {
+            manager.close();
+        } // end of try/finally
+    } // end of read method
+
+    /**
+     * @return  The part of the path after prefix + "/", or null if there is none.
+     */
+    private static String pathId(URI uri, String prefix) {
+        String path = uri.getPath();
+        if (path.length() <= prefix.length() + 1) {
+            return null;
+        } // end of if statement
+        return path.substring(prefix.length() + 1);
+    } // end of pathId method
+
+    /**
+     * Decodes a query string or form body.  A name can be given more than once.
+     * @param encoded   name=value pairs separated by &amp;, or null.
+     * @return          The values given for each name.
+     */
+    private static Map<String, List<String>> parseForm(String encoded) {
+        Map<String, List<String>> form = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return form;
+        } // end of if statement
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            form.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        } // end of for loop
+        return form;
+    } // end of parseForm method
+
+    /**
+     * @return  The first value given for name, or otherwise if there is none.
+     */
+    private static String first(Map<String, List<String>> form, String name, String otherwise) {
+        List<String> values = form.get(name);
+        return values == null || values.isEmpty() ? otherwise : values.get(0);
+    } // end of first method
+
+    /**
+     * @throws IllegalArgumentException If value is missing or is not a whole number.
+     */
+    private static long parseLong(String value, String what) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": " + value);
+        } // end of try/catch
+    } // end of parseLong method
+
+    /**
+     * @throws IllegalArgumentException If value is missing, is not a whole number, or does not
+     *                                  fit in an int.
+     */
+    private static int parseInt(String value, String what) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + what + ": " + value);
+        } // end of try/catch
+    } // end of parseInt method
+
+    private static String toJson(Customers customer) {
+        return "{\"customer_id\":" + customer.getCustomer_id() +
+                ",\"last_name\":" + quote(customer.getLast_name()) +
+                ",\"first_name\":" + quote(customer.getFirst_name()) +
+                ",\"street\":" + quote(customer.getStreet()) +
+                ",\"zip\":" + quote(customer.getZip()) +
+                ",\"phone\":" + quote(customer.getPhone()) + "}";
+    } // end of toJson method
+
+    /**
+     * Just the columns in the list fetch group, so that listing customers reads nothing else.
+     */
+    private static String toListJson(Customers customer) {
+        return "{\"customer_id\":" + customer.getCustomer_id() +
+                ",\"last_name\":" + quote(customer.getLast_name()) +
+                ",\"first_name\":" + quote(customer.getFirst_name()) +
+                ",\"phone\":" + quote(customer.getPhone()) + "}";
+    } // end of toListJson method
+
+    private static String toJson(ProductMatch match) {
+        return "{\"upc\":" + quote(match.getUpc()) +
+                ",\"prod_name\":" + quote(match.getProdName()) +
+                ",\"mfgr\":" + quote(match.getMfgr()) +
+                ",\"model\":" + quote(match.getModel()) +
+                ",\"unit_list_price\":" + match.getUnitListPrice() +
+                ",\"score\":" + match.getScore() + "}";
+    } // end of toJson method
+
+    private static String toJson(Order_summaries summary) {
+        return "{\"customer_id\":" + summary.getCustomer_id() +
+                ",\"order_count\":" + summary.getOrder_count() +
+                ",\"lifetime_spend\":" + summary.getLifetime_spend() +
+                ",\"last_order_date\":" + quote(String.valueOf(summary.getLast_order_date())) + "}";
+    } // end of toJson method
+
+    private static String toJson(Products product) {
+        return "{\"upc\":" + quote(product.getUPC()) +
+                ",\"prod_name\":" + quote(product.getProd_name()) +
+                ",\"mfgr\":" + quote(product.getMfgr()) +
+                ",\"model\":" + quote(product.getModel()) +
+                ",\"unit_list_price\":" + product.getUnit_list_price() +
+                ",\"units_in_stock\":" + product.getUnits_in_stock() + "}";
+    } // end of toJson method
+
+    /**
+     * @return  value as a JSON string, or null.
+     */
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        } // end of if statement
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            } // end of if/else statement
+        } // end of for loop
+        return json.append('"').toString();
+    } // end of quote method
+} // End of OrderServer class
@@ -0,0 +1,432 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * A programmatic way to place, look up and cancel orders, without going through the
+ * Scanner prompts in CustomerOrders.
+ * <p>
+ * The EntityManagerFactory is thread safe, but an EntityManager is not.  So rather than
+ * sharing a single EntityManager the way that CustomerOrders does, every call here gets
+ * its own EntityManager from the factory and closes it before returning.  That means that
+ * any number of threads can call the same OrderService at the same time.  The entities
+ * that come back are detached.
+ * </p>
+ */
+public class OrderService {
+    /** Shared by every call, each of which creates its own EntityManager from it. */
+    private final EntityManagerFactory factory;
+
+    /** Product cache to invalidate when stock changes are committed, or null if there is none. */
+    private final ProductCatalog catalog;
+
+    /** Takes the ordered quantities out of stock, and counts how often that was contended. */
+    private final StockReservations reservations = new StockReservations();
+
+    /**
+     * How many times to try placing an order that keeps losing deadlocks or lock timeouts
+     * against other orders for the same products, before giving up.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final Logger LOGGER = Logger.getLogger(OrderService.class.getName());
+
+    /**
+     * Constructor for the OrderService.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     */
+    public OrderService(EntityManagerFactory factory) {
+        this(factory, null);
+    } // end of OrderService()
+
+    /**
+     * Constructor for an OrderService that keeps a product catalog up to date.  Every product
+     * whose stock changes is invalidated in the catalog once the change has been committed.
+     * @param factory   The EntityManagerFactory for the CustomerOrders persistence unit.
+     * @param catalog   The product catalog that is being read from elsewhere.
+     */
+    public OrderService(EntityManagerFactory factory, ProductCatalog catalog) {
+        this.factory = factory;
+        this.catalog = catalog;
+    } // end of OrderService()
+
+    /**
+     * Places an order for an existing customer, dated right now.
+     * @param customerId    The customer placing the order.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              The order that was committed.
+     */
+    public Orders placeOrder(long customerId, Map<String, Integer> lines, String soldBy) {
+        return placeOrder(customerId, LocalDateTime.now(), lines, soldBy);
+    } // end of placeOrder method
+
+    /**
+     * Places an order for an existing customer.  The order, all of its lines and the stock
+     * updates are committed in one transaction, or not at all.  If the transaction loses a
+     * lock conflict with another order, it is tried again, up to MAX_ATTEMPTS times.
+     * @param customerId    The customer placing the order.
+     * @param orderDate     When the order was placed.  Together with the customer, this
+     *                      identifies the order.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              The order that was committed.
+     * @throws IllegalArgumentException If there are no lines, a quantity is not positive, or
+     *                      the customer or a product does not exist.
+     * @throws IllegalStateException If there is not enough stock on hand for one of the lines.
+     */
+    public Orders placeOrder(long customerId, LocalDateTime orderDate, Map<String, Integer> lines,
+                             String soldBy) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one line");
+        } // end of if statement
+        // Always reserve the products in UPC order, so that two orders can never each be
+        // holding a row lock that the other one is waiting for.
+        SortedMap<String, Integer> sortedLines = new TreeMap<>(lines);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return placeOrderOnce(customerId, orderDate, sortedLines, soldBy);
+            } catch (RuntimeException e) {
+                if (!StockReservations.isLockConflict(e)) {
+                    throw e;
+                } else if (attempt == MAX_ATTEMPTS) {
+                    reservations.recordFailure();
+                    throw e;
+                } // end of if/else statement
+                reservations.recordRetry();
+                LOGGER.fine("Retrying order for customer " + customerId + " after " + e);
+            } // end of try/catch
+        } // end of for loop
+    } // end of placeOrder method
+
+    /**
+     * Makes one attempt at placing an order, in its own transaction.
+     * @param customerId    The customer placing the order.
+     * @param orderDate     When the order was placed.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              The order that was committed.
+     */
+    private Orders placeOrderOnce(long customerId, LocalDateTime orderDate, SortedMap<String, Integer> lines,
+                                  String soldBy) {
+        EntityManager manager = factory.createEntityManager();
+        boolean committed = false;
+        try {
+            EntityTransaction tx = manager.getTransaction();
+            long started = System.nanoTime();
+            tx.begin();
+            Customers customer = PersistenceMetrics.find(manager, Customers.class, customerId);
+            if (customer == null) {
+                throw new IllegalArgumentException("No customer with id " + customerId);
+            } // end of if statement
+            Orders order = new Orders(customer, orderDate, soldBy);
+            manager.persist(order);
+            double total = 0;
+            for (Map.Entry<String, Integer> line : lines.entrySet()) {
+                total += addOrderLine(manager, order, line.getKey(), line.getValue());
+            } // end of for loop
+            OrderSummaries.orderPlaced(manager, customer, orderDate, total);
+            tx.commit();
+            committed = true;
+            PersistenceMetrics.transactions().committedOrder(started, lines.size());
+            invalidate(lines.keySet());
+            LOGGER.fine("Placed " + order);
+            return order;
+        } finally {
+            if (!committed) {
+                PersistenceMetrics.transactions().rolledBack();
+            } // end of if statement
+            close(manager);
+        } // end of try/finally
+    } // end of placeOrderOnce method
+
+    /**
+     * Places a group of orders in a single transaction, with a single commit.  All of the stock
+     * that the group needs is reserved first, with one UPDATE per product in UPC order.  If any
+     * one of the orders cannot be placed, none of them are, and the exception is passed on; the
+     * caller can then place them one at a time to find out which.  This is not retried on a lock
+     * conflict either.
+     * @param requests  The orders to place.
+     * @return          The orders that were committed, in the same order as the requests.
+     */
+    public List<Orders> placeOrders(List<OrderRequest> requests) {
+        SortedMap<String, Integer> quantities = new TreeMap<>();
+        for (OrderRequest request : requests) {
+            for (Map.Entry<String, Integer> line : request.getLines().entrySet()) {
+                if (line.getValue() == null || line.getValue() <= 0) {
+                    throw new IllegalArgumentException("Invalid quantity for " + line.getKey() +
+                            ", has to be greater than 0");
+                } // end of if statement
+                quantities.merge(line.getKey(), line.getValue(), Integer::sum);
+            } // end of for loop
+        } // end of for loop
+
+        EntityManager manager = factory.createEntityManager();
+        boolean committed = false;
+        try {
+            EntityTransaction tx = manager.getTransaction();
+            long started = System.nanoTime();
+            tx.begin();
+            Map<String, Products> products = new HashMap<>();
+            for (Map.Entry<String, Integer> quantity : quantities.entrySet()) {
+                Products product = PersistenceMetrics.find(manager, Products.class, quantity.getKey());
+                if (product == null) {
+                    throw new IllegalArgumentException("No product with UPC " + quantity.getKey());
+                } // end of if statement
+                if (!reservations.reserve(manager, quantity.getKey(), quantity.getValue())) {
+                    throw new IllegalStateException("Not enough of " + quantity.getKey() + " left in stock, " +
+                            quantity.getValue() + " requested");
+                } // end of if statement
+                products.put(quantity.getKey(), product);
+            } // end of for loop
+
+            List<Orders> orders = new ArrayList<>(requests.size());
+            double[] totals = new double[requests.size()];
+            for (OrderRequest request : requests) {
+                Customers customer = PersistenceMetrics.find(manager, Customers.class, request.getCustomerId());
+                if (customer == null) {
+                    throw new IllegalArgumentException("No customer with id " + request.getCustomerId());
+                } // end of if statement
+                Orders order = new Orders(customer, request.getOrderDate(), request.getSoldBy());
+                manager.persist(order);
+                for (Map.Entry<String, Integer> line : request.getLines().entrySet()) {
+                    Products product = products.get(line.getKey());
+                    manager.persist(new Order_lines(order, product, line.getValue(), product.getUnit_list_price()));
+                    totals[orders.size()] += line.getValue() * product.getUnit_list_price();
+                } // end of for loop
+                orders.add(order);
+            } // end of for loop
+            // Summaries last, in customer order, after the products have all been locked.
+            Integer[] byCustomer = new Integer[orders.size()];
+            for (int i = 0; i < byCustomer.length; i++) {
+                byCustomer[i] = i;
+            } // end of for loop
+            Arrays.sort(byCustomer, Comparator.comparingLong(i -> requests.get(i).getCustomerId()));
+            for (int i : byCustomer) {
+                Orders order = orders.get(i);
+                OrderSummaries.orderPlaced(manager, order.getCustomer(), order.getOrder_date(), totals[i]);
+            } // end of for loop
+            // One flush and one commit for the whole group.
+            tx.commit();
+            committed = true;
+            PersistenceMetrics.transactions().committed(started);
+            for (OrderRequest request : requests) {
+                PersistenceMetrics.transactions().orderRows(request.getLines().size());
+            } // end of for loop
+            invalidate(quantities.keySet());
+            LOGGER.fine("Placed a group of " + orders.size() + " orders");
+            return orders;
+        } finally {
+            if (!committed) {
+                PersistenceMetrics.transactions().rolledBack();
+            } // end of if statement
+            close(manager);
+        } // end of try/finally
+    } // end of placeOrders method
+
+    /**
+     * Reads the running totals of a customer's orders: one primary key lookup, however many
+     * orders they have placed.
+     * @param customerId    The customer.
+     * @return              Their summary, or null if they have not placed any orders.
+     */
+    public Order_summaries getSummary(long customerId) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            return manager.find(Order_summaries.class, customerId);
+        } finally {
+            close(manager);
+        } // end of try/finally
+    } // end of getSummary method
+
+    /**
+     * Reads every order that a customer has placed, with all of their lines and products, in
+     * two SQL statements no matter how many orders there are: one for the orders, with the
+     * customer joined in, and one for all of the lines, with their products joined in.  The
+     * order of each line is then already in the EntityManager, so nothing is looked up one row
+     * at a time.
+     * @param customerId    The customer.
+     * @return              Each order, newest first, with its lines in UPC order.  Empty if the
+     *                      customer has not placed any orders.
+     */
+    public Map<Orders, List<Order_lines>> getOrderHistory(long customerId) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            List<Orders> orders = PersistenceMetrics.timeQuery("OrdersForCustomer", () ->
+                    manager.createNamedQuery("OrdersForCustomer", Orders.class)
+                            .setParameter("customerId", customerId)
+                            .getResultList());
+            Map<Orders, List<Order_lines>> history = new LinkedHashMap<>();
+            for (Orders order : orders) {
+                history.put(order, new ArrayList<>());
+            } // end of for loop
+            if (orders.isEmpty()) {
+                return history;
+            } // end of if statement
+            List<Order_lines> lines = PersistenceMetrics.timeQuery("OrderLinesForCustomer", () ->
+                    manager.createNamedQuery("OrderLinesForCustomer", Order_lines.class)
+                            .setParameter("customerId", customerId)
+                            .getResultList());
+            for (Order_lines line : lines) {
+                history.get(line.getOrder()).add(line);
+            } // end of for loop
+            return history;
+        } finally {
+            close(manager);
+        } // end of try/finally
+    } // end of getOrderHistory method
+
+    /**
+     * Finds an order by its primary key.
+     * @param customerId    The customer that placed the order.
+     * @param orderDate     When the order was placed.
+     * @return              The order, or null if there is no such order.
+     */
+    public Orders getOrder(long customerId, LocalDateTime orderDate) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            return manager.find(Orders.class, new Orders_pk(customerId, orderDate));
+        } finally {
+            close(manager);
+        } // end of try/finally
+    } // end of getOrder method
+
+    /**
+     * Cancels an order: its lines are removed, their quantities go back into stock, and
+     * then the order itself is removed.
+     * @param customerId    The customer that placed the order.
+     * @param orderDate     When the order was placed.
+     * @return              true if the order was cancelled, false if there is no such order.
+     */
+    public boolean cancelOrder(long customerId, LocalDateTime orderDate) {
+        EntityManager manager = factory.createEntityManager();
+        boolean committed = false;
+        try {
+            EntityTransaction tx = manager.getTransaction();
+            long started = System.nanoTime();
+            tx.begin();
+            Orders order = manager.find(Orders.class, new Orders_pk(customerId, orderDate));
+            if (order == null) {
+                tx.rollback();
+                return false;
+            } // end of if statement
+            List<Order_lines> orderLines = manager
+                    .createQuery("SELECT ol FROM Order_lines ol WHERE ol.order = :order " +
+                            "ORDER BY ol.product.UPC", Order_lines.class)
+                    .setParameter("order", order)
+                    .getResultList();
+            List<String> upcs = new ArrayList<>();
+            double total = 0;
+            for (Order_lines line : orderLines) {
+                Products product = line.getProduct();
+                upcs.add(product.getUPC());
+                reservations.release(manager, product.getUPC(), line.getQuantity());
+                total += line.getQuantity() * line.getUnit_sale_price();
+                manager.remove(line);
+            } // end of for loop
+            manager.remove(order);
+            OrderSummaries.orderCancelled(manager, order.getCustomer(), total);
+            tx.commit();
+            committed = true;
+            PersistenceMetrics.transactions().committed(started);
+            invalidate(upcs);
+            LOGGER.fine("Cancelled " + order);
+            return true;
+        } finally {
+            if (!committed) {
+                PersistenceMetrics.transactions().rolledBack();
+            } // end of if statement
+            close(manager);
+        } // end of try/finally
+    } // end of cancelOrder method
+
+    /**
+     * Adds one line to an order that is being placed in the manager's current transaction,
+     * taking the quantity out of stock.
+     * @param manager   The EntityManager with the active transaction.
+     * @param order     The order that the line belongs to.
+     * @param upc       The product being ordered.
+     * @param quantity  How many of the product are being ordered.
+     * @return          The total for the line.
+     */
+    private double addOrderLine(EntityManager manager, Orders order, String upc, Integer quantity) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Invalid quantity for " + upc + ", has to be greater than 0");
+        } // end of if statement
+        Products product = PersistenceMetrics.find(manager, Products.class, upc);
+        if (product == null) {
+            throw new IllegalArgumentException("No product with UPC " + upc);
+        } // end of if statement
+        if (!reservations.reserve(manager, upc, quantity)) {
+            throw new IllegalStateException("Not enough of " + upc + " left in stock, " +
+                    quantity + " requested");
+        } // end of if statement
+        manager.persist(new Order_lines(order, product, quantity, product.getUnit_list_price()));
+        return quantity * product.getUnit_list_price();
+    } // end of addOrderLine method
+
+    /**
+     * @return  The counts of stock reservations made by this service, and of how often they
+     *          had to be retried.
+     */
+    public StockReservations getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Drops products whose stock has just changed from the shared cache, and from the product
+     * catalog if there is one.  This is only called once the change has been committed, so that
+     * nobody can read the old stock back into the cache in between.
+     * @param upcs      The UPCs of the products that changed.
+     */
+    private void invalidate(Collection<String> upcs) {
+        Cache sharedCache = factory.getCache();
+        for (String upc : upcs) {
+            sharedCache.evict(Products.class, upc);
+            PersistenceMetrics.sharedCache(Products.class).evicted();
+            if (catalog != null) {
+                catalog.invalidate(upc);
+            } // end of if statement
+        } // end of for loop
+    } // end of invalidate method
+
+    /**
+     * Rolls back whatever the manager still has in progress, then closes it.
+     * @param manager   The EntityManager that a call is finished with.
+     */
+    private void close(EntityManager manager) {
+        if (manager.getTransaction().isActive()) {
+            manager.getTransaction().rollback();
+        } // end of if statement
+        manager.close();
+    } // end of close method
+} // End of OrderService class
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Order_summaries;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the Order_summaries row of a customer in step with their orders.  Both methods have to
+ * be called inside of the transaction that places or cancels the order, so that the summary is
+ * committed or rolled back along with it.
+ * <p>
+ * The customer's row is locked first, so that two transactions for the same customer take
+ * turns: otherwise both could read the same summary and one update would be lost, or both could
+ * find no summary and try to insert one.  Callers lock their products before this, so that
+ * locks are always taken products first, then customers.
+ * </p>
+ */
+final class OrderSummaries {
+    private OrderSummaries() {}
+
+    /**
+     * Adds an order to the customer's summary, creating the summary if this is their first.
+     * @param manager   The EntityManager with the active transaction.
+     * @param customer  The customer, managed by manager.
+     * @param orderDate When the order was placed.
+     * @param total     The total of all of the lines of the order.
+     */
+    static void orderPlaced(EntityManager manager, Customers customer, LocalDateTime orderDate, double total) {
+        manager.lock(customer, LockModeType.PESSIMISTIC_WRITE);
+        Order_summaries summary = manager.find(Order_summaries.class, customer.getCustomer_id());
+        if (summary == null) {
+            summary = new Order_summaries(customer);
+            manager.persist(summary);
+        } // end of if statement
+        summary.addOrder(orderDate, total);
+    } // end of orderPlaced method
+
+    /**
+     * Takes an order back out of the customer's summary.  The order must already have been
+     * removed, so that it is not found again when looking for their latest order.
+     * @param manager   The EntityManager with the active transaction.
+     * @param customer  The customer, managed by manager.
+     * @param total     The total of all of the lines of the order.
+     */
+    static void orderCancelled(EntityManager manager, Customers customer, double total) {
+        manager.lock(customer, LockModeType.PESSIMISTIC_WRITE);
+        Order_summaries summary = manager.find(Order_summaries.class, customer.getCustomer_id());
+        if (summary == null) {
+            // Orders placed before the summaries table was filled in; nothing to take back.
+            return;
+        } // end of if statement
+        LocalDateTime lastOrderDate = manager.createNamedQuery("LastOrderDate", LocalDateTime.class)
+                .setParameter("customer", customer)
+                .getSingleResult();
+        summary.removeOrder(total, lastOrderDate);
+    } // end of orderCancelled method
+} // End of OrderSummaries class
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.management.JMException;
+import javax.persistence.EntityManager;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Where the application keeps its query and transaction measurements, and publishes them as
+ * JMX MBeans so that they can be watched with jconsole or any other JMX client.
+ * <ul>
+ *     <li>csulb.cecs323:type=QueryLatency,name=&lt;query name&gt;,unit=micros: one Histogram
+ *     for each named query, created the first time the query is timed.</li>
+ *     <li>csulb.cecs323:type=Transactions: the TransactionMetrics.</li>
+ *     <li>csulb.cecs323:type=SharedCache,name=&lt;entity&gt;: SharedCacheStats for each entity
+ *     class looked up with find.</li>
+ * </ul>
+ */
+public final class PersistenceMetrics {
+    private PersistenceMetrics() {}
+
+    /** The JMX domain for all of our MBeans. */
+    public static final String DOMAIN = "csulb.cecs323";
+
+    private static final Logger LOGGER = Logger.getLogger(PersistenceMetrics.class.getName());
+
+    /** Latency histogram for each query, by name. */
+    private static final ConcurrentMap<String, Histogram> QUERIES = new ConcurrentHashMap<>();
+
+    /** Shared cache statistics for each entity class, by class name. */
+    private static final ConcurrentMap<String, SharedCacheStats> SHARED_CACHES = new ConcurrentHashMap<>();
+
+    private static final TransactionMetrics TRANSACTIONS = register(new TransactionMetrics(),
+            DOMAIN + ":type=Transactions");
+
+    /**
+     * Runs a query and records how long it took.
+     * @param name  The name of the query, such as ReturnProduct.
+     * @param query Runs the query.
+     * @return      Whatever the query returned.
+     */
+    public static <T> T timeQuery(String name, Supplier<T> query) {
+        long start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            query(name).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        } // end of try/finally
+    } // end of timeQuery method
+
+    /**
+     * @param name  The name of a query.
+     * @return      The latency histogram for that query, in microseconds.
+     */
+    public static Histogram query(String name) {
+        return QUERIES.computeIfAbsent(name, key -> register(new Histogram(),
+                DOMAIN + ":type=QueryLatency,name=" + ObjectName.quote(key) + ",unit=micros"));
+    } // end of query method
+
+    /**
+     * Finds an entity by its primary key, timing the lookup as the query Find&lt;entity&gt; and
+     * counting whether the shared cache already had it.
+     * @param manager   The EntityManager to look the entity up with.
+     * @param type      The entity class.
+     * @param id        The primary key.
+     * @return          The entity, or null if there is no such entity.
+     */
+    public static <T> T find(EntityManager manager, Class<T> type, Object id) {
+        boolean cached = manager.getEntityManagerFactory().getCache().contains(type, id);
+        sharedCache(type).lookedUp(cached);
+        return timeQuery("Find" + type.getSimpleName(), () -> manager.find(type, id));
+    } // end of find method
+
+    /**
+     * @param type  An entity class.
+     * @return      The shared cache statistics for that class.
+     */
+    public static SharedCacheStats sharedCache(Class<?> type) {
+        return SHARED_CACHES.computeIfAbsent(type.getSimpleName(), key -> register(new SharedCacheStats(),
+                DOMAIN + ":type=SharedCache,name=" + ObjectName.quote(key)));
+    } // end of sharedCache method
+
+    /**
+     * @return  The transaction counts and durations.
+     */
+    public static TransactionMetrics transactions() {
+        return TRANSACTIONS;
+    }
+
+    /**
+     * Registers an MBean with the platform MBean server.  If that fails, the metrics are still
+     * collected, they just cannot be seen over JMX.
+     * @param mbean The MBean.
+     * @param name  Its ObjectName.
+     * @return      The MBean.
+     */
+    private static <T> T register(T mbean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register " + name, e);
+        } // end of try/catch
+        return mbean;
+    } // end of register method
+} // End of PersistenceMetrics class
@@ -0,0 +1,235 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Products;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A read-through cache of Products, keyed by UPC.
+ * <p>
+ * The first time that a UPC is asked for, the product is loaded from the database and kept.
+ * After that, the product comes from memory until it is invalidated.  At most capacity
+ * products are kept; when there are more, the one that was used least recently is evicted.
+ * </p>
+ * <p>
+ * The lock is only held to look a UPC up, or to note that it is being loaded; the load itself
+ * runs outside of the lock.  So a slow miss only holds up the threads that want that same UPC,
+ * which wait for the one load instead of starting their own.  The list of products is not
+ * cached: getPage reads one page at a time with the keyset-paged ProductsAfter query, so the
+ * catalog never holds more than capacity products, however big the table gets.
+ * </p>
+ * <p>
+ * Whoever commits a change to the stock or price of a product has to invalidate it here,
+ * otherwise the catalog will keep handing out the old values.  One catalog can be shared
+ * between threads.
+ * </p>
+ */
+public class ProductCatalog {
+    /** The most products that will be kept at once. */
+    private final int capacity;
+
+    /** Loads one product from the database, or returns null if there is no such UPC. */
+    private final Function<String, Products> loader;
+
+    /** Loads the products after a UPC, in UPC order, up to a page size. */
+    private final BiFunction<String, Integer, List<Products>> pageLoader;
+
+    /**
+     * The cached products, in order from least to most recently used.  A product that is still
+     * being loaded is here as a future that has not completed yet.
+     */
+    private final LinkedHashMap<String, CompletableFuture<Products>> products;
+
+    /** Number of lookups answered from memory, or by waiting for a load that had already started. */
+    private long hits;
+
+    /** Number of lookups that had to go to the database. */
+    private long misses;
+
+    /** Number of products dropped to stay within the capacity. */
+    private long evictions;
+
+    /**
+     * Constructor for the ProductCatalog.
+     * @param capacity      The most products to keep in memory at once.
+     * @param loader        Loads one product by UPC, returning null if there is no such product.
+     * @param pageLoader    Loads the products with a UPC after the one given, in UPC order, up
+     *                      to the page size given, such as with the ProductsAfter query.
+     */
+    public ProductCatalog(int capacity, Function<String, Products> loader,
+                          BiFunction<String, Integer, List<Products>> pageLoader) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity has to be greater than 0");
+        } // end of if statement
+        this.capacity = capacity;
+        this.loader = loader;
+        this.pageLoader = pageLoader;
+        this.products = new LinkedHashMap<String, CompletableFuture<Products>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Products>> eldest) {
+                boolean evict = size() > ProductCatalog.this.capacity;
+                if (evict) {
+                    evictions++;
+                } // end of if statement
+                return evict;
+            }
+        };
+    } // end of ProductCatalog()
+
+    /**
+     * Finds a product, loading it if it is not already in memory.  If another thread is already
+     * loading the same product, this waits for that load rather than going to the database too.
+     * @param upc   The UPC of the product.
+     * @return      The product, or null if there is no product with that UPC.
+     */
+    public Products get(String upc) {
+        CompletableFuture<Products> product;
+        boolean load = false;
+        synchronized (this) {
+            product = products.get(upc);
+            if (product != null) {
+                hits++;
+            } else {
+                misses++;
+                load = true;
+                product = new CompletableFuture<>();
+                products.put(upc, product);
+            } // end of if/else statement
+        } // end of synchronized block
+        if (load) {
+            return load(upc, product);
+        } // end of if statement
+        try {
+            return product.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } // end of try/catch
+    } // end of get method
+
+    /**
+     * Loads a product for the threads waiting on it.  A UPC that is not found, or that fails to
+     * load, is taken back out of memory so that the next lookup tries again.
+     * @param upc       The UPC of the product.
+     * @param product   The future that get put in memory for the product.
+     * @return          The product, or null if there is no product with that UPC.
+     */
+    private Products load(String upc, CompletableFuture<Products> product) {
+        Products loaded;
+        try {
+            loaded = loader.apply(upc);
+        } catch (RuntimeException e) {
+            forget(upc, product);
+            product.completeExceptionally(e);
+            throw e;
+        } // end of try/catch
+        if (loaded == null) {
+            forget(upc, product);
+        } // end of if statement
+        product.complete(loaded);
+        return loaded;
+    } // end of load method
+
+    /**
+     * Takes a product out of memory, unless it has been invalidated and loaded again since.
+     */
+    private synchronized void forget(String upc, CompletableFuture<Products> product) {
+        products.remove(upc, product);
+    } // end of forget method
+
+    /**
+     * Reads one page of products from the database, in UPC order.  Start with an afterUPC of ""
+     * and then pass in the UPC of the last product on each page.  The pages are not kept, so
+     * this does not count as a hit or a miss.
+     * @param afterUPC  The UPC of the last product on the previous page.
+     * @param pageSize  The most products to return.
+     * @return          The products with a UPC after afterUPC, which is empty after the last page.
+     */
+    public List<Products> getPage(String afterUPC, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size has to be greater than 0");
+        } // end of if statement
+        return pageLoader.apply(afterUPC, pageSize);
+    } // end of getPage method
+
+    /**
+     * Goes through every product a page at a time, such as to fill in a ProductSearch, so that
+     * only one page is in memory at once.
+     * @param pageSize  How many products to read at a time.
+     * @param action    Called with each page, in UPC order.
+     */
+    public void forEachPage(int pageSize, Consumer<List<Products>> action) {
+        List<Products> page = getPage("", pageSize);
+        while (!page.isEmpty()) {
+            action.accept(page);
+            page = page.size() < pageSize ? List.of() : getPage(page.get(page.size() - 1).getUPC(), pageSize);
+        } // end of while loop
+    } // end of forEachPage method
+
+    /**
+     * Forgets one product, so that it is read from the database the next time.
+     * @param upc   The UPC of the product that changed.
+     */
+    public synchronized void invalidate(String upc) {
+        products.remove(upc);
+    } // end of invalidate method
+
+    /**
+     * Forgets every product.
+     */
+    public synchronized void invalidateAll() {
+        products.clear();
+    } // end of invalidateAll method
+
+    /**
+     * @return  Number of lookups answered from memory.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return  Number of lookups that had to go to the database.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return  Number of products dropped to stay within the capacity.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return  Number of products currently in memory.
+     */
+    public synchronized int size() {
+        return products.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProductCatalog: " + products.size() + "/" + capacity + " products, " + hits + " hits, " +
+                misses + " misses, " + evictions + " evictions";
+    }
+} // End of ProductCatalog class
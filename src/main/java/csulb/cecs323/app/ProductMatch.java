@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+/**
+ * One product found by a ProductSearch: the product as it was indexed, and how well it
+ * matched.  This is a plain value held by the search, not an entity, so the stock on hand is
+ * not part of it; look the product up in the ProductCatalog for that.
+ */
+public class ProductMatch {
+    /** The product's UPC. */
+    private final String upc;
+
+    /** The product's name. */
+    private final String prodName;
+
+    /** Who makes it. */
+    private final String mfgr;
+
+    /** The manufacturer's model number. */
+    private final String model;
+
+    /** The list price when the product was last indexed. */
+    private final double unitListPrice;
+
+    /** How well the product matched; higher is better. */
+    private final double score;
+
+    /**
+     * Constructor for a ProductMatch.
+     * @param upc           The product's UPC.
+     * @param prodName      The product's name.
+     * @param mfgr          Who makes it.
+     * @param model         The manufacturer's model number.
+     * @param unitListPrice The list price when the product was last indexed.
+     * @param score         How well the product matched.
+     */
+    public ProductMatch(String upc, String prodName, String mfgr, String model, double unitListPrice, double score) {
+        this.upc = upc;
+        this.prodName = prodName;
+        this.mfgr = mfgr;
+        this.model = model;
+        this.unitListPrice = unitListPrice;
+        this.score = score;
+    } // end of ProductMatch()
+
+    /**
+     * @return upc
+     */
+    public String getUpc() {
+        return upc;
+    }
+
+    /**
+     * @return prodName
+     */
+    public String getProdName() {
+        return prodName;
+    }
+
+    /**
+     * @return mfgr
+     */
+    public String getMfgr() {
+        return mfgr;
+    }
+
+    /**
+     * @return model
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * @return unitListPrice
+     */
+    public double getUnitListPrice() {
+        return unitListPrice;
+    }
+
+    /**
+     * @return score
+     */
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return upc + "\t" + prodName + "\t" + mfgr + " " + model + "\t$" + String.format("%.2f", unitListPrice) +
+                "\t(" + String.format("%.3f", score) + ")";
+    }
+} // End of ProductMatch class
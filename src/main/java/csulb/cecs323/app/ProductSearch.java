@@ -0,0 +1,588 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Products;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Full text search over the name, manufacturer and model of every product, from an inverted
+ * index held in memory, so that finding a product never turns into a LIKE '%...%' scan of
+ * the PRODUCTS table.
+ * <p>
+ * The text of each field is split into words of letters and digits, in lower case.  A model
+ * number that splits into more than one word, like UN55-TU7000, is also entered as the words
+ * run together, so that un55tu7000 finds it as well.  For each word, the index keeps the list
+ * of products that contain it (its postings), with a weight that counts a word in the name
+ * three times, and one in the manufacturer or model twice.
+ * </p>
+ * <p>
+ * A search finds the products that contain every word of the query, the last word being
+ * matched as a prefix, since it may not have been typed in completely yet.  So that a search
+ * for "m" does not match every word that starts with an m, the prefix has to be at least
+ * MIN_PREFIX long, and only the first MAX_EXPANSIONS words that start with it are used.  Matches are ranked
+ * by TF-IDF: the sum, over the query words, of the product's weight for the word, times the
+ * log of how rare the word is among all of the products, divided by the square root of the
+ * product's total weight, so that a long name does not win just by having more words in it.
+ * Each postings list is sorted by impact, so a search reads the lists for its words side by
+ * side, best first, and stops as soon as no product further down any of them could make the
+ * results (Fagin's threshold algorithm).  It usually reads a few dozen products, however many
+ * have the words.
+ * </p>
+ * <p>
+ * put adds a product or brings it up to date.  A product that was only repriced is updated in
+ * place; a change to its text replaces its postings.  Searches take a read lock and updates a
+ * write lock, so one index can be shared between threads, with many searches at once.
+ * </p>
+ */
+public class ProductSearch {
+    /** How much a word in the product name counts. */
+    private static final double NAME_WEIGHT = 3;
+
+    /** How much a word in the manufacturer counts. */
+    private static final double MFGR_WEIGHT = 2;
+
+    /** How much a word in the model counts. */
+    private static final double MODEL_WEIGHT = 2;
+
+    /** The last word of a search has to be at least this long to be matched as a prefix. */
+    private static final int MIN_PREFIX = 2;
+
+    /** The most words in the index that the last word of a search is matched against. */
+    private static final int MAX_EXPANSIONS = 100;
+
+    /** For each word, the products that contain it. */
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    /** Every product in the index, by UPC. */
+    private final Map<String, Document> documents = new HashMap<>();
+
+    /** Searches share the read lock; put and remove take the write lock. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final Logger LOGGER = Logger.getLogger(ProductSearch.class.getName());
+
+    /**
+     * What the index knows about one product.  Only unitListPrice ever changes, and only while
+     * holding the write lock.
+     */
+    private static final class Document {
+        final String upc;
+        final String prodName;
+        final String mfgr;
+        final String model;
+        double unitListPrice;
+
+        /** The weight of each word in this product. */
+        final Map<String, Double> weights;
+
+        /** 1 / the square root of the total of the weights. */
+        final double norm;
+
+        Document(Products product) {
+            this.upc = product.getUPC();
+            this.prodName = product.getProd_name();
+            this.mfgr = product.getMfgr();
+            this.model = product.getModel();
+            this.unitListPrice = product.getUnit_list_price();
+            this.weights = new HashMap<>();
+            addWords(prodName, NAME_WEIGHT, false);
+            addWords(mfgr, MFGR_WEIGHT, false);
+            addWords(model, MODEL_WEIGHT, true);
+            double total = 0;
+            for (double weight : weights.values()) {
+                total += weight;
+            } // end of for loop
+            this.norm = total == 0 ? 0 : 1 / Math.sqrt(total);
+        } // end of Document()
+
+        private void addWords(String text, double weight, boolean runTogether) {
+            List<String> words = words(text);
+            for (String word : words) {
+                weights.merge(word, weight, Double::sum);
+            } // end of for loop
+            if (runTogether && words.size() > 1) {
+                weights.merge(String.join("", words), weight, Double::sum);
+            } // end of if statement
+        } // end of addWords method
+
+        boolean sameText(Document other) {
+            return Objects.equals(prodName, other.prodName) && Objects.equals(mfgr, other.mfgr) &&
+                    Objects.equals(model, other.model);
+        } // end of sameText method
+    } // end of Document class
+
+    /**
+     * The products that contain one word, with the impact of the word on each: its weight in
+     * the product times the product's norm.  Kept in plain arrays rather than a collection, to
+     * keep the index small, and sorted by impact, highest first, so that a search can stop
+     * reading a list as soon as nothing further down it could make the results.  add keeps the
+     * list sorted as it goes; append does not, and sort has to be called once it is done.
+     */
+    private static final class Postings {
+        Document[] documents = new Document[2];
+        double[] impacts = new double[2];
+        int size;
+
+        void add(Document document, double impact) {
+            grow();
+            // Goes after every product with the same impact, so ties stay in the order they were added.
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (impacts[middle] >= impact) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                } // end of if/else statement
+            } // end of while loop
+            int at = low;
+            System.arraycopy(documents, at, documents, at + 1, size - at);
+            System.arraycopy(impacts, at, impacts, at + 1, size - at);
+            documents[at] = document;
+            impacts[at] = impact;
+            size++;
+        } // end of add method
+
+        void append(Document document, double impact) {
+            grow();
+            documents[size] = document;
+            impacts[size] = impact;
+            size++;
+        } // end of append method
+
+        /**
+         * Sorts the list by impact, highest first.  The sort is stable, so ties stay in the
+         * order they were added, the same as with add.
+         */
+        void sort() {
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = impacts[i - 1] >= impacts[i];
+            } // end of for loop
+            if (sorted) {
+                return;
+            } // end of if statement
+            // A bottom-up merge sort of both arrays together, so that nothing has to be boxed.
+            Document[] fromDocuments = documents;
+            double[] fromImpacts = impacts;
+            Document[] toDocuments = new Document[documents.length];
+            double[] toImpacts = new double[impacts.length];
+            for (int width = 1; width < size; width *= 2) {
+                for (int low = 0; low < size; low += 2 * width) {
+                    int middle = Math.min(low + width, size);
+                    int high = Math.min(low + 2 * width, size);
+                    int left = low;
+                    int right = middle;
+                    for (int to = low; to < high; to++) {
+                        // Taking from the left on a tie is what keeps the sort stable.
+                        if (right >= high || (left < middle && fromImpacts[left] >= fromImpacts[right])) {
+                            toDocuments[to] = fromDocuments[left];
+                            toImpacts[to] = fromImpacts[left++];
+                        } else {
+                            toDocuments[to] = fromDocuments[right];
+                            toImpacts[to] = fromImpacts[right++];
+                        } // end of if/else statement
+                    } // end of for loop
+                } // end of for loop
+                Document[] swapDocuments = fromDocuments;
+                fromDocuments = toDocuments;
+                toDocuments = swapDocuments;
+                double[] swapImpacts = fromImpacts;
+                fromImpacts = toImpacts;
+                toImpacts = swapImpacts;
+            } // end of for loop
+            documents = fromDocuments;
+            impacts = fromImpacts;
+        } // end of sort method
+
+        private void grow() {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                impacts = Arrays.copyOf(impacts, size * 2);
+            } // end of if statement
+        } // end of grow method
+
+        void remove(Document document) {
+            for (int i = 0; i < size; i++) {
+                if (documents[i] == document) {
+                    System.arraycopy(documents, i + 1, documents, i, size - i - 1);
+                    System.arraycopy(impacts, i + 1, impacts, i, size - i - 1);
+                    documents[--size] = null;
+                    return;
+                } // end of if statement
+            } // end of for loop
+        } // end of remove method
+    } // end of Postings class
+
+    /**
+     * A product being considered by a search, and its score.
+     */
+    private static final class Candidate {
+        final Document document;
+        final double score;
+
+        /** Which candidate this was, counting from 0, so that ties go to the one found first. */
+        final int order;
+
+        Candidate(Document document, double score, int order) {
+            this.document = document;
+            this.score = score;
+            this.order = order;
+        } // end of Candidate()
+    } // end of Candidate class
+
+    /**
+     * Adds a product, or brings the one with the same UPC up to date.  Call this whenever a
+     * product is created, renamed or repriced.
+     * @param product   The product, as committed.
+     */
+    public void put(Products product) {
+        Document document = new Document(product);
+        lock.writeLock().lock();
+        try {
+            index(document, null);
+        } finally {
+            lock.writeLock().unlock();
+        } // end of try/finally
+    } // end of put method
+
+    /**
+     * Adds or brings up to date many products at once, such as every product in the catalog.
+     * Rather than putting each posting in its place as it goes, which costs a shift of the
+     * rest of the list every time, the postings are added to the end of their lists, and each
+     * list that was added to is sorted once at the end.
+     * @param products  The products.
+     */
+    public void putAll(Collection<Products> products) {
+        long started = System.nanoTime();
+        List<Document> documents = new ArrayList<>(products.size());
+        for (Products product : products) {
+            documents.add(new Document(product));
+        } // end of for loop
+        lock.writeLock().lock();
+        try {
+            Set<Postings> unsorted = new HashSet<>();
+            for (Document document : documents) {
+                index(document, unsorted);
+            } // end of for loop
+            for (Postings list : unsorted) {
+                list.sort();
+            } // end of for loop
+        } finally {
+            lock.writeLock().unlock();
+        } // end of try/finally
+        LOGGER.info("Indexed " + documents.size() + " products in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    } // end of putAll method
+
+    /**
+     * Takes a product out of the index.
+     * @param upc   The UPC of the product.
+     * @return      true if the product was in the index.
+     */
+    public boolean remove(String upc) {
+        lock.writeLock().lock();
+        try {
+            Document current = documents.remove(upc);
+            if (current != null) {
+                unindex(current);
+            } // end of if statement
+            return current != null;
+        } finally {
+            lock.writeLock().unlock();
+        } // end of try/finally
+    } // end of remove method
+
+    /**
+     * Adds a document to the postings, replacing the one with the same UPC.  Must hold the write lock.
+     * @param unsorted  null to keep each list sorted, otherwise where to collect the lists that
+     *                  were appended to and still have to be sorted.
+     */
+    private void index(Document document, Set<Postings> unsorted) {
+        Document current = documents.get(document.upc);
+        if (current != null && current.sameText(document)) {
+            current.unitListPrice = document.unitListPrice;
+            return;
+        } // end of if statement
+        if (current != null) {
+            unindex(current);
+        } // end of if statement
+        documents.put(document.upc, document);
+        for (Map.Entry<String, Double> weight : document.weights.entrySet()) {
+            Postings list = postings.computeIfAbsent(weight.getKey(), w -> new Postings());
+            if (unsorted == null) {
+                list.add(document, weight.getValue() * document.norm);
+            } else {
+                list.append(document, weight.getValue() * document.norm);
+                unsorted.add(list);
+            } // end of if/else statement
+        } // end of for loop
+    } // end of index method
+
+    /**
+     * Takes a document out of the postings.  Must hold the write lock.
+     */
+    private void unindex(Document document) {
+        for (String word : document.weights.keySet()) {
+            Postings list = postings.get(word);
+            list.remove(document);
+            if (list.size == 0) {
+                postings.remove(word);
+            } // end of if statement
+        } // end of for loop
+    } // end of unindex method
+
+    /**
+     * Finds the products that contain every word of the query, best match first.
+     * @param query What to search for, such as "samsung 55" or "tv un55".
+     * @param limit The most products to return.
+     * @return      The products found.
+     */
+    public List<ProductMatch> search(String query, int limit) {
+        List<String> words = words(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        } // end of if statement
+        lock.readLock().lock();
+        try {
+            // The words in the index that each query word matches, with how rare each one is.
+            double documentCount = documents.size();
+            int count = words.size();
+            List<Map<String, Double>> matched = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String word = words.get(i);
+                Map<String, Double> idfs = new LinkedHashMap<>();
+                if (i == count - 1 && word.length() >= MIN_PREFIX) {
+                    for (Map.Entry<String, Postings> entry :
+                            postings.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()) {
+                        if (idfs.size() == MAX_EXPANSIONS) {
+                            break;
+                        } // end of if statement
+                        idfs.put(entry.getKey(), idf(entry.getValue(), documentCount));
+                    } // end of for loop
+                } else if (postings.containsKey(word)) {
+                    idfs.put(word, idf(postings.get(word), documentCount));
+                } // end of if/else statement
+                if (idfs.isEmpty()) {
+                    return new ArrayList<>();
+                } // end of if statement
+                matched.add(idfs);
+            } // end of for loop
+
+            // A cursor for each query word, reading down the lists that it matches, highest
+            // impact times idf first.
+            Cursor[] cursors = new Cursor[count];
+            for (int i = 0; i < count; i++) {
+                cursors[i] = new Cursor(matched.get(i));
+            } // end of for loop
+
+            // Read one product from each cursor in turn, scoring each product the first time
+            // that it is read.  A product that has not been read yet cannot score more than the
+            // total of what is at the head of each cursor, so once the worst of the best limit
+            // products scores at least that much, nothing left can make the results.  Once one
+            // cursor runs out, every product with that word has been scored.
+            PriorityQueue<Candidate> top = new PriorityQueue<>(limit, (a, b) -> a.score != b.score
+                    ? Double.compare(a.score, b.score) : Integer.compare(b.order, a.order));
+            Set<Document> seen = new HashSet<>();
+            int order = 0;
+            while (true) {
+                double threshold = 0;
+                boolean exhausted = false;
+                for (Cursor cursor : cursors) {
+                    double head = cursor.head();
+                    exhausted |= head < 0;
+                    threshold += head;
+                } // end of for loop
+                if (exhausted || (top.size() == limit && top.peek().score >= threshold)) {
+                    break;
+                } // end of if statement
+                for (Cursor cursor : cursors) {
+                    Document document = cursor.next();
+                    if (document != null && seen.add(document)) {
+                        offer(top, limit, new Candidate(document, score(document, matched), order++));
+                    } // end of if statement
+                } // end of for loop
+            } // end of while loop
+            ProductMatch[] found = new ProductMatch[top.size()];
+            for (int i = found.length - 1; i >= 0; i--) {
+                Candidate candidate = top.poll();
+                Document document = candidate.document;
+                found[i] = new ProductMatch(document.upc, document.prodName, document.mfgr, document.model,
+                        document.unitListPrice, candidate.score);
+            } // end of for loop
+            return new ArrayList<>(Arrays.asList(found));
+        } finally {
+            lock.readLock().unlock();
+        } // end of try/finally
+    } // end of search method
+
+    /**
+     * Reads down the postings lists that one query word matches, merged into one list in order
+     * of impact times idf.  Must hold the read lock.
+     */
+    private final class Cursor {
+        final Postings[] lists;
+        final double[] idfs;
+        final int[] positions;
+
+        Cursor(Map<String, Double> matched) {
+            lists = new Postings[matched.size()];
+            idfs = new double[matched.size()];
+            positions = new int[matched.size()];
+            int j = 0;
+            for (Map.Entry<String, Double> idf : matched.entrySet()) {
+                lists[j] = postings.get(idf.getKey());
+                idfs[j++] = idf.getValue();
+            } // end of for loop
+        } // end of Cursor()
+
+        /** @return  Which list the next product comes from, or -1 if they have all been read. */
+        private int best() {
+            int best = -1;
+            double highest = -1;
+            for (int j = 0; j < lists.length; j++) {
+                if (positions[j] < lists[j].size && lists[j].impacts[positions[j]] * idfs[j] > highest) {
+                    highest = lists[j].impacts[positions[j]] * idfs[j];
+                    best = j;
+                } // end of if statement
+            } // end of for loop
+            return best;
+        } // end of best method
+
+        /** @return  Impact times idf of the next product, or -1 if they have all been read. */
+        double head() {
+            int j = best();
+            return j < 0 ? -1 : lists[j].impacts[positions[j]] * idfs[j];
+        } // end of head method
+
+        /** @return  The next product, or null if they have all been read. */
+        Document next() {
+            int j = best();
+            return j < 0 ? null : lists[j].documents[positions[j]++];
+        } // end of next method
+    } // end of Cursor class
+
+    /**
+     * Puts a candidate into the heap if it matched every word, dropping the worst candidate
+     * if there are then more than limit of them.
+     */
+    private static void offer(PriorityQueue<Candidate> top, int limit, Candidate candidate) {
+        if (candidate.score > 0) {
+            top.add(candidate);
+            if (top.size() > limit) {
+                top.poll();
+            } // end of if statement
+        } // end of if statement
+    } // end of offer method
+
+    /**
+     * Scores one product against every query word.  Must hold the read lock.
+     * @param matched   For each query word, the words in the index that it matches, with their idf.
+     * @return          The TF-IDF score, or 0 if the product is missing one of the words.  Worked
+     *                  out in the same order as the impacts in the postings, so that a product
+     *                  scores exactly the threshold that it makes up, and ties end the search.
+     */
+    private static double score(Document document, List<Map<String, Double>> matched) {
+        double score = 0;
+        for (Map<String, Double> idfs : matched) {
+            double best = 0;
+            if (idfs.size() == 1) {
+                Map.Entry<String, Double> only = idfs.entrySet().iterator().next();
+                Double weight = document.weights.get(only.getKey());
+                if (weight != null) {
+                    best = weight * document.norm * only.getValue();
+                } // end of if statement
+            } else {
+                for (Map.Entry<String, Double> weight : document.weights.entrySet()) {
+                    Double idf = idfs.get(weight.getKey());
+                    if (idf != null) {
+                        best = Math.max(best, weight.getValue() * document.norm * idf);
+                    } // end of if statement
+                } // end of for loop
+            } // end of if/else statement
+            if (best == 0) {
+                return 0;
+            } // end of if statement
+            score += best;
+        } // end of for loop
+        return score;
+    } // end of score method
+
+    /**
+     * @return  How rare a word is: the log of one plus the number of products per product
+     *          that has the word.
+     */
+    private static double idf(Postings list, double documentCount) {
+        return Math.log(1 + documentCount / list.size);
+    } // end of idf method
+
+    /**
+     * @return  Number of products in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        } // end of try/finally
+    } // end of size method
+
+    /**
+     * Splits text into words of letters and digits, in lower case.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        } // end of if statement
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letterOrDigit = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letterOrDigit && start < 0) {
+                start = i;
+            } else if (!letterOrDigit && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            } // end of if/else statement
+        } // end of for loop
+        return words;
+    } // end of words method
+
+    @Override
+    public String toString() {
+        lock.readLock().lock();
+        try {
+            return "ProductSearch: " + documents.size() + " products, " + postings.size() + " words";
+        } finally {
+            lock.readLock().unlock();
+        } // end of try/finally
+    }
+} // End of ProductSearch class
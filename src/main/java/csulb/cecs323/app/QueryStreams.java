@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.CursoredStream;
+import org.eclipse.persistence.queries.ObjectLevelReadQuery;
+
+import javax.persistence.Query;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a query through an EclipseLink database cursor, rather than reading the whole result
+ * into a List.  Rows are fetched from the database pageSize at a time as the stream is
+ * consumed, and rows that have already been handed out are released, so the memory used
+ * does not grow with the size of the result.
+ * <p>
+ * Entities are read read-only: they are not registered with the EntityManager, and changes
+ * made to them will not be written back.  The stream holds on to a database cursor, so it
+ * must be closed, for instance with try-with-resources.
+ * </p>
+ */
+final class QueryStreams {
+    private QueryStreams() {}
+
+    /**
+     * Opens a cursor on the query and wraps it in a Stream.
+     * @param query     The query to run.  Its parameters must already be set.
+     * @param type      The type of each row.
+     * @param pageSize  How many rows to fetch from the database at a time.
+     * @return          The rows of the query, which must be closed when done.
+     */
+    static <T> Stream<T> stream(Query query, Class<T> type, int pageSize) {
+        query.setHint(QueryHints.CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.CURSOR_PAGE_SIZE, pageSize);
+        query.setHint(QueryHints.JDBC_FETCH_SIZE, pageSize);
+        if (query.unwrap(JpaQuery.class).getDatabaseQuery() instanceof ObjectLevelReadQuery) {
+            // Only queries that build entities register them; rows of plain values never are.
+            query.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+        } // end of if statement
+        CursoredStream cursor = (CursoredStream) query.getSingleResult();
+        Iterator<T> rows = new Iterator<T>() {
+            /** Rows handed out since the last release. */
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (++read == pageSize) {
+                    // Let go of the rows that the caller has already seen.
+                    cursor.releasePrevious();
+                    read = 0;
+                } // end of if statement
+                return type.cast(cursor.next());
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                .onClose(cursor::close);
+    } // end of stream method
+} // End of QueryStreams class
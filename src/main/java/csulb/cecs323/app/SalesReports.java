@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Orders;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Order totals and sales reports, computed by the database.
+ * <p>
+ * Adding up order lines in Java means loading every one of them as an entity first.  Instead,
+ * each of these runs one of the aggregate queries defined in Order_lines, so only the totals
+ * come back, as SalesTotal values rather than managed entities.
+ * </p>
+ * <p>
+ * Like CustomerOrders, a SalesReports uses the EntityManager that it is given, and so must
+ * only be used by one thread at a time.
+ * </p>
+ */
+public class SalesReports {
+    /** The EntityManager that runs the queries. */
+    private final EntityManager entityManager;
+
+    /**
+     * Constructor for SalesReports.
+     * @param manager   The EntityManager to run the queries with.
+     */
+    public SalesReports(EntityManager manager) {
+        this.entityManager = manager;
+    } // end of SalesReports()
+
+    /**
+     * Adds up quantity * unit_sale_price over the lines of an order.  If the order is still being
+     * placed in the EntityManager's transaction, its lines are flushed first and are counted.
+     * @param order The order to total.
+     * @return      The total cost of the order, 0 if it has no lines.
+     */
+    public double getOrderTotal(Orders order) {
+        Object total = entityManager.createNamedQuery("ReturnOrderTotal")
+                .setParameter(1, order.getCustomer().getCustomer_id())
+                .setParameter(2, order.getOrder_date())
+                .getSingleResult();
+        return total == null ? 0 : ((Number) total).doubleValue();
+    } // end of getOrderTotal method
+
+    /**
+     * Revenue for each product, highest revenue first.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per product that sold, keyed by UPC.
+     */
+    public List<SalesTotal> getRevenueByProduct(LocalDateTime from, LocalDateTime to) {
+        return runReport("RevenueByProduct", from, to);
+    }
+
+    /**
+     * Revenue for each sales person (Orders.sold_by), highest revenue first.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per sales person, keyed by name.
+     */
+    public List<SalesTotal> getRevenueBySalesPerson(LocalDateTime from, LocalDateTime to) {
+        return runReport("RevenueBySalesPerson", from, to);
+    }
+
+    /**
+     * Revenue for each day, in date order.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per day with sales, keyed by the date (yyyy-mm-dd).
+     */
+    public List<SalesTotal> getRevenueByDay(LocalDateTime from, LocalDateTime to) {
+        return runReport("RevenueByDay", from, to);
+    }
+
+    /**
+     * Runs one of the report queries and turns its rows into SalesTotals.
+     * @param queryName The name of the native query, which returns key, lines, units and revenue.
+     * @param from      Earliest order date to include.
+     * @param to        Order date to stop at, which is not included.
+     * @return          The rows of the report.
+     */
+    private List<SalesTotal> runReport(String queryName, LocalDateTime from, LocalDateTime to) {
+        List<?> rows = entityManager.createNamedQuery(queryName)
+                .setParameter(1, from)
+                .setParameter(2, to)
+                .getResultList();
+        List<SalesTotal> totals = new ArrayList<>(rows.size());
+        for (Object next : rows) {
+            Object[] row = (Object[]) next;
+            totals.add(new SalesTotal(String.valueOf(row[0]),
+                    ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(),
+                    ((Number) row[3]).doubleValue()));
+        } // end of for loop
+        return totals;
+    } // end of runReport method
+} // End of SalesReports class
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+/**
+ * One row of a sales report: the totals of all of the order lines that share a key, such as a
+ * product UPC, a sales person or a day.  This is a plain value computed by the database, not an
+ * entity, so it is cheap to create and is not managed by any EntityManager.
+ */
+public class SalesTotal {
+    /** What the order lines were grouped by. */
+    private final String key;
+
+    /** Number of order lines. */
+    private final long lines;
+
+    /** Total quantity over those lines. */
+    private final long units;
+
+    /** Total of quantity * unit_sale_price over those lines. */
+    private final double revenue;
+
+    /**
+     * Constructor for a SalesTotal.  The boxed parameter types are what the aggregate functions
+     * return, which lets a JPQL constructor expression (SELECT NEW ...) call this directly.
+     * @param key       What the order lines were grouped by.
+     * @param lines     Number of order lines.
+     * @param units     Total quantity over those lines.
+     * @param revenue   Total of quantity * unit_sale_price over those lines.
+     */
+    public SalesTotal(String key, Long lines, Long units, Double revenue) {
+        this.key = key;
+        this.lines = lines == null ? 0 : lines;
+        this.units = units == null ? 0 : units;
+        this.revenue = revenue == null ? 0 : revenue;
+    } // end of SalesTotal()
+
+    /**
+     * @return key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return lines
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return units
+     */
+    public long getUnits() {
+        return units;
+    }
+
+    /**
+     * @return revenue
+     */
+    public double getRevenue() {
+        return revenue;
+    }
+
+    @Override
+    public String toString() {
+        return key + "\t" + lines + " lines\t" + units + " units\t$" + String.format("%.2f", revenue);
+    }
+} // End of SalesTotal class
@@ -0,0 +1,730 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Customers;
+import csulb.cecs323.model.Order_lines;
+import csulb.cecs323.model.Order_summaries;
+import csulb.cecs323.model.Orders;
+import csulb.cecs323.model.Products;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Spreads the customers, and their orders, over several databases, or shards.  Each shard is
+ * a Derby database of its own, with all of the tables, opened through its own
+ * EntityManagerFactory.  Everything that belongs to a customer (the customer, their Orders,
+ * Order_lines and Order_summaries) lives on shard customer_id mod the number of shards, so
+ * placing an order, reading a customer's history or cancelling an order only ever touches one
+ * shard, and orders for customers on different shards are committed independently of each
+ * other, each to its own transaction log.
+ * <p>
+ * Products are needed on every shard, for the order lines to refer to, so they are copied to
+ * all of them.  The units in stock are split between the copies, and each shard sells from
+ * its own share, so an order still reserves its stock in the same transaction as the order,
+ * on one shard.  When a shard does not have enough of a product for an order, it borrows the
+ * difference from the other shards and the order is tried again.  Each loan is a transaction
+ * on the shard that lends, then one on the shard that borrows, so a crash between the two
+ * loses the units that were on their way, but never sells more than there is.  A shard
+ * borrows a little more than the order needs, so one that keeps running short, because more
+ * of the orders for a product come from its customers, does not have to borrow for every one.
+ * </p>
+ * <p>
+ * New customers are given their customer_id here rather than by the SEQUENCE table, which
+ * would hand out the same ids on every shard.  The ids carry on from the highest one on any
+ * shard, so they are only unique if this is the only program adding customers to the shards.
+ * </p>
+ * <p>
+ * Reports that need every shard, such as the sales reports, are run on all of the shards at
+ * once, and their rows are merged.  Like OrderService, a ShardRouter can be shared between
+ * threads.
+ * </p>
+ */
+public class ShardRouter implements AutoCloseable {
+    /** The shards, by shard number. */
+    private final List<EntityManagerFactory> shards;
+
+    /** Places the orders on each shard. */
+    private final List<OrderService> services;
+
+    /** Moves stock from one shard to another when a shard runs short. */
+    private final StockReservations transfers = new StockReservations();
+
+    /** The highest customer_id handed out so far, on any shard. */
+    private final AtomicLong lastCustomerId;
+
+    /** Runs the queries that go out to every shard, one thread per shard. */
+    private final ExecutorService executor;
+
+    /**
+     * How many times to try an order that keeps running short after borrowing, because other
+     * orders on the same shard took what was borrowed first.  Also how many times to try moving
+     * stock that keeps losing lock conflicts, the same as OrderService does for a whole order.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /** The shard databases are this, followed by the shard number. */
+    static final String SHARD_DATABASE = "database/CustomerOrders-shard";
+
+    /** The tables that are split up by customer_id, parents before children. */
+    private static final String[] CUSTOMER_TABLES = {"CUSTOMERS", "ORDERS", "ORDER_LINES", "ORDER_SUMMARIES"};
+
+    private static final Logger LOGGER = Logger.getLogger(ShardRouter.class.getName());
+
+    /**
+     * Constructor for the ShardRouter.
+     * @param shards    The EntityManagerFactory of each shard, in shard number order.  The same
+     *                  shards have to be given in the same order every time.
+     */
+    public ShardRouter(List<EntityManagerFactory> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("There has to be at least one shard");
+        } // end of if statement
+        this.shards = new ArrayList<>(shards);
+        this.services = new ArrayList<>(shards.size());
+        for (EntityManagerFactory shard : shards) {
+            this.services.add(new OrderService(shard));
+        } // end of for loop
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastCustomerId = new AtomicLong(highestCustomerId());
+    } // end of ShardRouter()
+
+    /**
+     * Opens the shards in database/CustomerOrders-shard0, -shard1 and so on, with the
+     * CustomerOrdersServer persistence unit.  A shard that does not exist yet is created, with
+     * empty tables.
+     * @param count The number of shards.
+     * @return      The router over those shards.
+     */
+    public static ShardRouter open(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("There has to be at least one shard");
+        } // end of if statement
+        List<EntityManagerFactory> shards = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            String database = SHARD_DATABASE + shard;
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("javax.persistence.jdbc.url", "jdbc:derby:" + database + ";create=true");
+            if (!Files.exists(Paths.get(database))) {
+                properties.put("javax.persistence.schema-generation.database.action", "create");
+            } // end of if statement
+            shards.add(Persistence.createEntityManagerFactory("CustomerOrdersServer", properties));
+        } // end of for loop
+        return new ShardRouter(shards);
+    } // end of open method
+
+    /**
+     * @return  The number of shards.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param customerId    A customer.
+     * @return              The number of the shard that the customer and their orders are on.
+     */
+    public int shardOf(long customerId) {
+        return (int) Math.floorMod(customerId, (long) shards.size());
+    } // end of shardOf method
+
+    /**
+     * @param customerId    A customer.
+     * @return              The EntityManagerFactory of the shard that the customer is on.
+     */
+    public EntityManagerFactory getShard(long customerId) {
+        return shards.get(shardOf(customerId));
+    } // end of getShard method
+
+    /**
+     * @return  The highest customer_id on any shard, 0 if there are no customers yet.
+     */
+    private long highestCustomerId() {
+        long highest = 0;
+        for (Long id : onEveryShard(manager -> manager
+                .createQuery("SELECT MAX(c.customer_id) FROM Customers c", Long.class)
+                .getSingleResult())) {
+            if (id != null) {
+                highest = Math.max(highest, id);
+            } // end of if statement
+        } // end of for loop
+        return highest;
+    } // end of highestCustomerId method
+
+    /**
+     * Adds a new customer, giving them the next customer_id and putting them on the shard
+     * that goes with it.
+     * @param customer  The new customer, with no customer_id yet.
+     * @return          The customer, now with their customer_id.
+     */
+    public Customers addCustomer(Customers customer) {
+        if (customer.getCustomer_id() != 0) {
+            throw new IllegalArgumentException("The customer already has a customer_id");
+        } // end of if statement
+        // EclipseLink only generates an id when it is 0, so this one is kept.
+        customer.setCustomer_id(lastCustomerId.incrementAndGet());
+        inTransaction(getShard(customer.getCustomer_id()), manager -> {
+            manager.persist(customer);
+            return customer;
+        });
+        return customer;
+    } // end of addCustomer method
+
+    /**
+     * Finds a customer on their shard.
+     * @param customerId    The customer.
+     * @return              The customer, or null if there is no such customer.
+     */
+    public Customers getCustomer(long customerId) {
+        EntityManager manager = getShard(customerId).createEntityManager();
+        try {
+            return manager.find(Customers.class, customerId);
+        } finally {
+            manager.close();
+        } // end of try/finally
+    } // end of getCustomer method
+
+    /**
+     * Adds or replaces a product on every shard.  A new product has its units in stock split
+     * between the shards.  For a product that is already there, the description and price are
+     * replaced, but the units that each shard has left are kept, since some of them may have
+     * been sold; the difference between units_in_stock and what the shards have left between
+     * them is added to, or taken from, the shards.
+     * @param product   The product, with the units in stock for all of the shards together.
+     */
+    public void putProduct(Products product) {
+        String upc = product.getUPC();
+        List<Integer> onHand = onEveryShard(manager -> unitsInStock(manager, upc));
+        int total = 0;
+        boolean known = false;
+        for (Integer units : onHand) {
+            if (units != null) {
+                total += units;
+                known = true;
+            } // end of if statement
+        } // end of for loop
+        long change = known ? (long) product.getUnits_in_stock() - total : 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int units = known ? 0 : share(product.getUnits_in_stock(), shard);
+            inTransaction(shards.get(shard), manager -> {
+                Products copy = manager.find(Products.class, upc);
+                if (copy == null) {
+                    manager.persist(new Products(upc, product.getProd_name(), product.getMfgr(),
+                            product.getModel(), product.getUnit_list_price(), units));
+                } else {
+                    copy.setProd_name(product.getProd_name());
+                    copy.setMfgr(product.getMfgr());
+                    copy.setModel(product.getModel());
+                    copy.setUnit_list_price(product.getUnit_list_price());
+                } // end of if/else statement
+                return null;
+            });
+        } // end of for loop
+        if (change > 0) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                int units = share((int) change, shard);
+                if (units > 0) {
+                    give(shard, upc, units);
+                } // end of if statement
+            } // end of for loop
+        } else if (change < 0) {
+            // Take it from whichever shards still have some, in shard order.
+            long remaining = -change;
+            for (int shard = 0; shard < shards.size() && remaining > 0; shard++) {
+                remaining -= take(shard, upc, (int) remaining, false);
+            } // end of for loop
+        } // end of if/else statement
+    } // end of putProduct method
+
+    /**
+     * @param unitsInStock  The units in stock for all of the shards together.
+     * @param shard         A shard number.
+     * @return              That shard's share of them.  The shares differ by at most one, and
+     *                      add up to unitsInStock.
+     */
+    int share(int unitsInStock, int shard) {
+        return unitsInStock / shards.size() + (unitsInStock % shards.size() > shard ? 1 : 0);
+    } // end of share method
+
+    /**
+     * Places an order on the customer's shard, dated right now.
+     * @param customerId    The customer placing the order.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              The order that was committed.
+     * @see OrderService#placeOrder(long, Map, String)
+     */
+    public Orders placeOrder(long customerId, Map<String, Integer> lines, String soldBy) {
+        return placeOrder(customerId, LocalDateTime.now(), lines, soldBy);
+    } // end of placeOrder method
+
+    /**
+     * Places an order on the customer's shard.  If the shard does not have enough of a product
+     * on hand, it borrows the difference from the other shards and the order is tried again.
+     * @param customerId    The customer placing the order.
+     * @param orderDate     When the order was placed.
+     * @param lines         Quantity desired for each product, keyed by UPC.
+     * @param soldBy        Name of the sales person.
+     * @return              The order that was committed.
+     * @throws IllegalStateException    If there is not enough stock for one of the lines on all
+     *                                  of the shards together.
+     * @see OrderService#placeOrder(long, LocalDateTime, Map, String)
+     */
+    public Orders placeOrder(long customerId, LocalDateTime orderDate, Map<String, Integer> lines, String soldBy) {
+        int shard = shardOf(customerId);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return services.get(shard).placeOrder(customerId, orderDate, lines, soldBy);
+            } catch (IllegalStateException e) {
+                // Nothing was borrowed if no line was short, so the order failed for some
+                // other reason, or there is no more to be had on the other shards.
+                if (attempt == MAX_ATTEMPTS || !borrow(shard, new TreeMap<>(lines))) {
+                    throw e;
+                } // end of if statement
+                LOGGER.fine("Retrying order for customer " + customerId + " after borrowing stock");
+            } // end of try/catch
+        } // end of for loop
+    } // end of placeOrder method
+
+    /**
+     * Moves stock onto a shard from the other shards, for each line of an order that the shard
+     * does not have enough of.  A shard that has none to spare is skipped, so less than the
+     * order needs might be moved; whatever was moved stays on the borrowing shard.
+     * @param shard The shard that the order is for.
+     * @param lines Quantity of each product, keyed by UPC, in UPC order.
+     * @return      true if any stock was moved.
+     */
+    private boolean borrow(int shard, SortedMap<String, Integer> lines) {
+        boolean moved = false;
+        for (Map.Entry<String, Integer> line : lines.entrySet()) {
+            if (line.getValue() == null || line.getValue() <= 0) {
+                continue;
+            } // end of if statement
+            Integer onHand = inTransaction(shards.get(shard), manager -> unitsInStock(manager, line.getKey()));
+            if (onHand == null) {
+                continue;
+            } // end of if statement
+            int needed = line.getValue() - onHand;
+            for (int i = 1; i < shards.size() && needed > 0; i++) {
+                int lender = (shard + i) % shards.size();
+                int taken = take(lender, line.getKey(), needed, true);
+                if (taken > 0) {
+                    give(shard, line.getKey(), taken);
+                    needed -= taken;
+                    moved = true;
+                } // end of if statement
+            } // end of for loop
+        } // end of for loop
+        return moved;
+    } // end of borrow method
+
+    /**
+     * Takes units of a product out of stock on one shard, in a transaction of its own, retrying
+     * if it loses a lock conflict.  Never takes more than the shard has on hand.
+     * @param shard     The shard to take them from.
+     * @param upc       The product.
+     * @param wanted    How many units are needed.
+     * @param extra     Whether to take more than wanted, if the shard has plenty: up to its
+     *                  share of what the shard has, the same as it would be split between
+     *                  the shards.
+     * @return          How many units were taken, which is 0 if the shard has none.
+     */
+    private int take(int shard, String upc, int wanted, boolean extra) {
+        return withRetries(shard, manager -> {
+            Integer onHand = unitsInStock(manager, upc);
+            if (onHand == null || onHand <= 0) {
+                return 0;
+            } // end of if statement
+            int units = Math.min(onHand, extra ? Math.max(wanted, share(onHand, 0)) : wanted);
+            // The units were read without a lock, so an order may have taken some since; the
+            // conditional UPDATE only takes them if they are still there.
+            return transfers.reserve(manager, upc, units) ? units : 0;
+        });
+    } // end of take method
+
+    /**
+     * Puts units of a product into stock on one shard, in a transaction of its own, retrying
+     * if it loses a lock conflict.
+     * @param shard The shard to give them to.
+     * @param upc   The product.
+     * @param units How many units to add.
+     */
+    private void give(int shard, String upc, int units) {
+        try {
+            withRetries(shard, manager -> {
+                transfers.release(manager, upc, units);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not give " + units + " of " + upc + " to shard " + shard, e);
+            throw e;
+        } // end of try/catch
+    } // end of give method
+
+    /**
+     * Runs some work in a transaction on one shard, and tries it again if it loses a lock
+     * conflict, up to MAX_ATTEMPTS times.
+     */
+    private <T> T withRetries(int shard, Function<EntityManager, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inTransaction(shards.get(shard), work);
+            } catch (RuntimeException e) {
+                if (!StockReservations.isLockConflict(e)) {
+                    throw e;
+                } else if (attempt == MAX_ATTEMPTS) {
+                    transfers.recordFailure();
+                    throw e;
+                } // end of if/else statement
+                transfers.recordRetry();
+            } // end of try/catch
+        } // end of for loop
+    } // end of withRetries method
+
+    /**
+     * Reads the units in stock of a product from the database, rather than from the cache.
+     * @param manager   An EntityManager on one shard.
+     * @param upc       The product.
+     * @return          Its units in stock on that shard, or null if there is no such product.
+     */
+    private static Integer unitsInStock(EntityManager manager, String upc) {
+        List<Integer> units = manager
+                .createQuery("SELECT p.units_in_stock FROM Products p WHERE p.UPC = :UPC", Integer.class)
+                .setParameter("UPC", upc)
+                .getResultList();
+        return units.isEmpty() ? null : units.get(0);
+    } // end of unitsInStock method
+
+    /**
+     * @return  The counts of the stock moved between shards: each loan is one reservation on
+     *          the shard that lent it and one release on the shard that borrowed it.  Orders
+     *          are counted by the OrderService of their shard.
+     */
+    public StockReservations getTransfers() {
+        return transfers;
+    }
+
+    /**
+     * Reads every order that a customer has placed, from their shard.
+     * @param customerId    The customer.
+     * @return              Each order, newest first, with its lines.
+     * @see OrderService#getOrderHistory(long)
+     */
+    public Map<Orders, List<Order_lines>> getOrderHistory(long customerId) {
+        return services.get(shardOf(customerId)).getOrderHistory(customerId);
+    } // end of getOrderHistory method
+
+    /**
+     * Reads the running totals of a customer's orders, from their shard.
+     * @param customerId    The customer.
+     * @return              Their summary, or null if they have not placed any orders.
+     */
+    public Order_summaries getSummary(long customerId) {
+        return services.get(shardOf(customerId)).getSummary(customerId);
+    } // end of getSummary method
+
+    /**
+     * Cancels an order on the customer's shard.  The stock goes back to that shard.
+     * @param customerId    The customer that placed the order.
+     * @param orderDate     When the order was placed.
+     * @return              true if the order was cancelled, false if there is no such order.
+     */
+    public boolean cancelOrder(long customerId, LocalDateTime orderDate) {
+        return services.get(shardOf(customerId)).cancelOrder(customerId, orderDate);
+    } // end of cancelOrder method
+
+    /**
+     * Revenue for each product, over every shard, highest revenue first.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per product that sold, keyed by UPC.
+     */
+    public List<SalesTotal> getRevenueByProduct(LocalDateTime from, LocalDateTime to) {
+        return mergeReports(onEveryShard(manager -> new SalesReports(manager).getRevenueByProduct(from, to)),
+                Comparator.comparingDouble(SalesTotal::getRevenue).reversed());
+    }
+
+    /**
+     * Revenue for each sales person, over every shard, highest revenue first.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per sales person, keyed by name.
+     */
+    public List<SalesTotal> getRevenueBySalesPerson(LocalDateTime from, LocalDateTime to) {
+        return mergeReports(onEveryShard(manager -> new SalesReports(manager).getRevenueBySalesPerson(from, to)),
+                Comparator.comparingDouble(SalesTotal::getRevenue).reversed());
+    }
+
+    /**
+     * Revenue for each day, over every shard, in date order.
+     * @param from  Earliest order date to include.
+     * @param to    Order date to stop at, which is not included.
+     * @return      One SalesTotal per day with sales, keyed by the date (yyyy-mm-dd).
+     */
+    public List<SalesTotal> getRevenueByDay(LocalDateTime from, LocalDateTime to) {
+        return mergeReports(onEveryShard(manager -> new SalesReports(manager).getRevenueByDay(from, to)),
+                Comparator.comparing(SalesTotal::getKey));
+    }
+
+    /**
+     * Adds up the rows with the same key from the report of each shard.
+     * @param reports   The report from each shard.
+     * @param order     How to sort the merged rows.
+     * @return          One row per key.
+     */
+    private static List<SalesTotal> mergeReports(List<List<SalesTotal>> reports, Comparator<SalesTotal> order) {
+        Map<String, SalesTotal> merged = new LinkedHashMap<>();
+        for (List<SalesTotal> report : reports) {
+            for (SalesTotal total : report) {
+                merged.merge(total.getKey(), total, (a, b) -> new SalesTotal(a.getKey(),
+                        a.getLines() + b.getLines(), a.getUnits() + b.getUnits(), a.getRevenue() + b.getRevenue()));
+            } // end of for loop
+        } // end of for loop
+        List<SalesTotal> totals = new ArrayList<>(merged.values());
+        totals.sort(order);
+        return totals;
+    } // end of mergeReports method
+
+    /**
+     * Runs a query on every shard at the same time, each with an EntityManager of its own.
+     * @param query The query, given the EntityManager of one shard.
+     * @return      What the query returned on each shard, in shard number order.
+     */
+    <T> List<T> onEveryShard(Function<EntityManager, T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (EntityManagerFactory shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                EntityManager manager = shard.createEntityManager();
+                try {
+                    return query.apply(manager);
+                } finally {
+                    manager.close();
+                } // end of try/finally
+            }, executor));
+        } // end of for loop
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            } // end of for loop
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } // end of if statement
+            throw e;
+        } // end of try/catch
+        return results;
+    } // end of onEveryShard method
+
+    /**
+     * Runs some work in a transaction on one shard, and commits it.
+     */
+    private static <T> T inTransaction(EntityManagerFactory shard, Function<EntityManager, T> work) {
+        EntityManager manager = shard.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            T result = work.apply(manager);
+            manager.getTransaction().commit();
+            return result;
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            } // end of if statement
+            manager.close();
+        } // end of try/finally
+    } // end of inTransaction method
+
+    /**
+     * Copies the data of an unsharded database into the shards, which should be empty.  Each
+     * customer goes to their shard along with their orders, order lines and summary, and every
+     * shard gets all of the products, with its share of the units in stock.  The rows are moved
+     * with Derby's export and import procedures, a table at a time, rather than as entities.
+     * @param source    The EntityManagerFactory of the database to copy.
+     * @throws IOException  If the temporary files cannot be written.
+     */
+    public void copyFrom(EntityManagerFactory source) throws IOException {
+        long started = System.nanoTime();
+        Path directory = Files.createTempDirectory("shards");
+        try {
+            copyTable(source, "CUSTOMERS", true, directory);
+            copyTable(source, "PRODUCTS", false, directory);
+            for (int shard = 0; shard < shards.size(); shard++) {
+                int count = shards.size();
+                int number = shard;
+                inTransaction(shards.get(shard), manager -> manager.createNativeQuery(
+                        "UPDATE PRODUCTS SET UNITS_IN_STOCK = UNITS_IN_STOCK / " + count +
+                        " + CASE WHEN MOD(UNITS_IN_STOCK, " + count + ") > " + number + " THEN 1 ELSE 0 END")
+                        .executeUpdate());
+            } // end of for loop
+            for (int i = 1; i < CUSTOMER_TABLES.length; i++) {
+                copyTable(source, CUSTOMER_TABLES[i], true, directory);
+            } // end of for loop
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                } // end of for loop
+            } // end of try-with-resources
+            Files.delete(directory);
+        } // end of try/finally
+        for (EntityManagerFactory shard : shards) {
+            shard.getCache().evictAll();
+        } // end of for loop
+        lastCustomerId.accumulateAndGet(highestCustomerId(), Math::max);
+        LOGGER.info("Copied the database into " + shards.size() + " shards in " +
+                (System.nanoTime() - started) / 1_000_000 + " ms");
+    } // end of copyFrom method
+
+    /**
+     * Exports one table from the source and imports it into every shard: just the shard's own
+     * customers' rows if byCustomer, otherwise all of them.  The columns are named, so the
+     * tables do not have to have their columns in the same order.
+     */
+    private void copyTable(EntityManagerFactory source, String table, boolean byCustomer, Path directory) {
+        String columns = inTransaction(shards.get(0), manager -> {
+            try {
+                return String.join(",", columnsOf(manager.unwrap(Connection.class), table));
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not read the columns of " + table, e);
+            } // end of try/catch
+        });
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (!byCustomer && shard > 0) {
+                importTable(shards.get(shard), table, columns, directory.resolve(table + ".csv"));
+                continue;
+            } // end of if statement
+            Path file = directory.resolve(table + (byCustomer ? "-" + shard : "") + ".csv");
+            String query = "SELECT " + columns + " FROM " + table +
+                    (byCustomer ? " WHERE MOD(CUSTOMER_ID, " + shards.size() + ") = " + shard : "");
+            inTransaction(source, manager -> call(manager,
+                    "CALL SYSCS_UTIL.SYSCS_EXPORT_QUERY(?, ?, NULL, NULL, 'UTF-8')", query, file.toString()));
+            importTable(shards.get(shard), table, columns, file);
+        } // end of for loop
+    } // end of copyTable method
+
+    private static void importTable(EntityManagerFactory shard, String table, String columns, Path file) {
+        inTransaction(shard, manager -> call(manager,
+                "CALL SYSCS_UTIL.SYSCS_IMPORT_DATA(NULL, ?, ?, NULL, ?, NULL, NULL, 'UTF-8', 0)",
+                table, columns, file.toString()));
+    } // end of importTable method
+
+    /**
+     * Calls a system procedure on the connection of the manager's transaction.
+     */
+    private static Void call(EntityManager manager, String sql, String... arguments) {
+        try (CallableStatement statement = manager.unwrap(Connection.class).prepareCall(sql)) {
+            for (int i = 0; i < arguments.length; i++) {
+                statement.setString(i + 1, arguments[i]);
+            } // end of for loop
+            statement.execute();
+            return null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not run " + sql + " with " + String.join(", ", arguments), e);
+        } // end of try/catch
+    } // end of call method
+
+    /**
+     * @return  The names of the columns of a table in the current schema, in the order that
+     *          the table has them.
+     */
+    private static List<String> columnsOf(Connection connection, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        String schema;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("VALUES CURRENT SCHEMA")) {
+            result.next();
+            schema = result.getString(1);
+        } // end of try-with-resources
+        try (ResultSet result = connection.getMetaData().getColumns(null, schema, table, null)) {
+            while (result.next()) {
+                columns.add(result.getString("COLUMN_NAME"));
+            } // end of while loop
+        } // end of try-with-resources
+        if (columns.isEmpty()) {
+            throw new SQLException("No table " + schema + "." + table);
+        } // end of if statement
+        return Collections.unmodifiableList(columns);
+    } // end of columnsOf method
+
+    /**
+     * Closes every shard.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        for (EntityManagerFactory shard : shards) {
+            shard.close();
+        } // end of for loop
+    } // end of close method
+
+    /**
+     * Command line entry point: splits database/CustomerOrders into shards.
+     * @param args  The number of shards, 4 by default.
+     * @throws IOException  If the temporary files cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        for (int shard = 0; shard < count; shard++) {
+            if (Files.exists(Paths.get(SHARD_DATABASE + shard))) {
+                System.out.println(SHARD_DATABASE + shard + " already exists; remove the shards to split again");
+                return;
+            } // end of if statement
+        } // end of for loop
+        DatabaseImage.installIfConfigured();
+        EntityManagerFactory source = Persistence.createEntityManagerFactory("CustomerOrders");
+        try (ShardRouter router = ShardRouter.open(count)) {
+            router.copyFrom(source);
+            List<Long> customers = router.onEveryShard(manager -> manager
+                    .createQuery("SELECT COUNT(c) FROM Customers c", Long.class).getSingleResult());
+            for (int shard = 0; shard < count; shard++) {
+                System.out.println(SHARD_DATABASE + shard + ": " + customers.get(shard) + " customers");
+            } // end of for loop
+        } finally {
+            source.close();
+        } // end of try/finally
+    } // End of the main method
+} // End of ShardRouter class
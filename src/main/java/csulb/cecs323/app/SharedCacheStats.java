@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How well the persistence provider's shared (second level) cache is doing for one entity class.
+ * <p>
+ * A lookup by primary key is a hit if the entity was already in the shared cache, and a miss
+ * if it had to be read from the database.  Evictions count the entities that the application
+ * removed from the cache because it committed a change to them.  Entities that the provider
+ * drops by itself, because the cache is full or they expired, cannot be seen from outside and
+ * show up as misses the next time that they are looked up.
+ * </p>
+ */
+public class SharedCacheStats implements SharedCacheStatsMBean {
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Counts one lookup.
+     * @param hit   Whether the entity was in the shared cache.
+     */
+    public void lookedUp(boolean hit) {
+        (hit ? hits : misses).incrementAndGet();
+    }
+
+    /**
+     * Counts an entity removed from the shared cache.
+     */
+    public void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long found = hits.get();
+        long total = found + misses.get();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + " misses=" + getMisses() + " hitRatio=" +
+                String.format("%.3f", getHitRatio()) + " evictions=" + getEvictions();
+    }
+} // End of SharedCacheStats class
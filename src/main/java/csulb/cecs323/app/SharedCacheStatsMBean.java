@@ -0,0 +1,28 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+/**
+ * The JMX view of SharedCacheStats.
+ */
+public interface SharedCacheStatsMBean {
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    void reset();
+} // End of SharedCacheStatsMBean interface
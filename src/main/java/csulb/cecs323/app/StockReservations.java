@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PessimisticLockException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes units of a product out of stock without overselling it.
+ * <p>
+ * Reading units_in_stock, checking it in Java and then writing back the difference lets two
+ * orders for the same product both pass the check.  Instead, the check and the decrement are
+ * a single conditional UPDATE (the ReserveStock query in Products), which only changes the row
+ * if there is still enough on hand.  The database locks just that one product row until the
+ * transaction ends, so orders for different products do not wait on each other.
+ * </p>
+ * <p>
+ * Orders for the same products can still deadlock or time out waiting on each other's row
+ * locks.  Callers that want to retry in that case can use isLockConflict to recognize it,
+ * and recordRetry to count it.  The counters are safe to update from any number of threads.
+ * </p>
+ */
+public class StockReservations {
+    /** Number of reservations that took the units out of stock. */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /** Number of reservations refused because there was not enough stock. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Number of units given back to stock. */
+    private final AtomicLong released = new AtomicLong();
+
+    /** Number of transactions retried after losing a lock conflict. */
+    private final AtomicLong retries = new AtomicLong();
+
+    /** Number of transactions that gave up after running out of retries. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Takes quantity units of a product out of stock, if there are that many on hand.  This has
+     * to be called inside of a transaction; if the transaction is rolled back, so is the
+     * reservation.  Managed instances of the product are not updated, refresh them if needed.
+     * @param manager   The EntityManager with the active transaction.
+     * @param upc       The product to reserve.
+     * @param quantity  How many units to reserve.
+     * @return          true if the units were reserved, false if there were not enough in stock.
+     */
+    public boolean reserve(EntityManager manager, String upc, int quantity) {
+        int updated = manager.createNamedQuery("ReserveStock")
+                .setParameter("UPC", upc)
+                .setParameter("quantity", quantity)
+                .executeUpdate();
+        if (updated == 1) {
+            reserved.incrementAndGet();
+            return true;
+        } else {
+            rejected.incrementAndGet();
+            return false;
+        } // end of if/else statement
+    } // end of reserve method
+
+    /**
+     * Puts quantity units of a product back into stock, for instance when an order is cancelled.
+     * @param manager   The EntityManager with the active transaction.
+     * @param upc       The product to give back.
+     * @param quantity  How many units to give back.
+     */
+    public void release(EntityManager manager, String upc, int quantity) {
+        manager.createNamedQuery("ReleaseStock")
+                .setParameter("UPC", upc)
+                .setParameter("quantity", quantity)
+                .executeUpdate();
+        released.addAndGet(quantity);
+    } // end of release method
+
+    /**
+     * Counts a transaction that is about to be retried after a lock conflict.
+     */
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Counts a transaction that ran out of retries.
+     */
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Checks whether an exception was caused by a deadlock or a lock timeout, in which case the
+     * transaction was rolled back and can simply be tried again.
+     * @param e The exception thrown by the persistence provider.
+     * @return  true if trying the transaction again might succeed.
+     */
+    public static boolean isLockConflict(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockException || cause instanceof LockTimeoutException) {
+                return true;
+            } // end of if statement
+            if (cause instanceof SQLException) {
+                // SQL state class 40 is "transaction rollback": 40001 for a deadlock and,
+                // in Derby, 40XL1 and 40XL2 for lock timeouts.
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("40")) {
+                    return true;
+                } // end of if statement
+            } // end of if statement
+        } // end of for loop
+        return false;
+    } // end of isLockConflict method
+
+    /**
+     * @return  Number of reservations that took the units out of stock.
+     */
+    public long getReserved() {
+        return reserved.get();
+    }
+
+    /**
+     * @return  Number of reservations refused because there was not enough stock.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return  Number of units given back to stock.
+     */
+    public long getReleased() {
+        return released.get();
+    }
+
+    /**
+     * @return  Number of transactions retried after losing a lock conflict.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return  Number of transactions that gave up after running out of retries.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StockReservations: " + reserved + " reserved, " + rejected + " rejected, " +
+                released + " units released, " + retries + " retries, " + failures + " failures";
+    }
+} // End of StockReservations class
@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the transactions that commit and roll back, how long the committed ones took from
+ * begin to commit, and how many order lines each committed order had.
+ */
+public class TransactionMetrics implements TransactionMetricsMBean {
+    private final AtomicLong commits = new AtomicLong();
+
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    /** Begin to commit, in microseconds. */
+    private final Histogram durations = new Histogram();
+
+    /** Order lines in each committed order. */
+    private final Histogram rowsPerOrder = new Histogram();
+
+    /**
+     * Counts a transaction that committed.
+     * @param startNanos    System.nanoTime() when the transaction began.
+     */
+    public void committed(long startNanos) {
+        commits.incrementAndGet();
+        durations.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Counts a transaction that placed an order and committed.
+     * @param startNanos    System.nanoTime() when the transaction began.
+     * @param rows          Number of order lines in the order.
+     */
+    public void committedOrder(long startNanos, int rows) {
+        committed(startNanos);
+        rowsPerOrder.record(rows);
+    }
+
+    /**
+     * Counts the order lines of one order in a transaction that placed several orders at once.
+     * The commit itself is counted separately, with committed.
+     * @param rows          Number of order lines in the order.
+     */
+    public void orderRows(int rows) {
+        rowsPerOrder.record(rows);
+    }
+
+    /**
+     * Counts a transaction that was rolled back.
+     */
+    public void rolledBack() {
+        rollbacks.incrementAndGet();
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.get();
+    }
+
+    @Override
+    public long getRollbacks() {
+        return rollbacks.get();
+    }
+
+    @Override
+    public long getDurationP50Micros() {
+        return durations.getP50();
+    }
+
+    @Override
+    public long getDurationP99Micros() {
+        return durations.getP99();
+    }
+
+    @Override
+    public long getDurationMaxMicros() {
+        return durations.getMax();
+    }
+
+    @Override
+    public double getRowsPerOrderMean() {
+        return rowsPerOrder.getMean();
+    }
+
+    @Override
+    public long getRowsPerOrderP99() {
+        return rowsPerOrder.getP99();
+    }
+
+    @Override
+    public long getRowsPerOrderMax() {
+        return rowsPerOrder.getMax();
+    }
+
+    @Override
+    public void reset() {
+        commits.set(0);
+        rollbacks.set(0);
+        durations.reset();
+        rowsPerOrder.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "commits=" + getCommits() + " rollbacks=" + getRollbacks() + " duration(us) " + durations +
+                " rows/order " + rowsPerOrder;
+    }
+} // End of TransactionMetrics class
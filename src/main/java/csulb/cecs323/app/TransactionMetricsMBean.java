@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+/**
+ * The JMX view of TransactionMetrics.
+ */
+public interface TransactionMetricsMBean {
+    long getCommits();
+
+    long getRollbacks();
+
+    long getDurationP50Micros();
+
+    long getDurationP99Micros();
+
+    long getDurationMaxMicros();
+
+    double getRowsPerOrderMean();
+
+    long getRowsPerOrderP99();
+
+    long getRowsPerOrderMax();
+
+    void reset();
+} // End of TransactionMetricsMBean interface
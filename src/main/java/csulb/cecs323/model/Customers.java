@@ -1,7 +1,11 @@
 package csulb.cecs323.model;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.annotations.FetchAttribute;
+import org.eclipse.persistence.annotations.FetchGroup;
+
 import javax.persistence.*;
-import java.util.Objects;
 /*
  * Licensed under the Academic Free License (AFL 3.0).
  *     http://opensource.org/licenses/AFL-3.0
@@ -15,6 +19,9 @@ import java.util.Objects;
  */
 
 @Entity
+// Kept in the shared cache: the most recently used 100,000 customers, for at most 10 minutes.
+@Cacheable
+@Cache(type = CacheType.CACHE, size = 100_000, expiry = 600_000)
 @NamedNativeQuery(
         name = "ReturnCustomers",
         query = "SELECT * " +
@@ -28,12 +35,59 @@ import java.util.Objects;
                 "WHERE CUSTOMER_ID = ? ",
         resultClass = Customers.class
 )
+@NamedQuery(
+        name = "CustomersAfter",
+        query = "SELECT c " +
+                "FROM   Customers c " +
+                "WHERE  c.customer_id > :lastId " +
+                "ORDER BY c.customer_id"
+)
 
+@NamedQuery(
+        name = "CustomersByName",
+        query = "SELECT c " +
+                "FROM   Customers c " +
+                "WHERE  c.last_name = :lastName " +
+                "ORDER BY c.first_name"
+)
+
+// Answered from the index behind the unique constraint; see DuplicateCustomerFilter.
+@NamedQuery(
+        name = "CustomerByNameAndPhone",
+        query = "SELECT c.customer_id " +
+                "FROM   Customers c " +
+                "WHERE  c.first_name = :firstName " +
+                "AND    c.last_name = :lastName " +
+                "AND    c.phone = :phone"
+)
+
+// What a list of customers shows, and what a single customer shows.  A query that only needs the
+// list view can ask for it with the eclipselink.fetch-group.name hint; the rest of the columns are
+// read if they are used after all.
+@FetchGroup(name = Customers.LIST, attributes = {
+        @FetchAttribute(name = "last_name"),
+        @FetchAttribute(name = "first_name"),
+        @FetchAttribute(name = "phone")})
+@FetchGroup(name = Customers.DETAIL, attributes = {
+        @FetchAttribute(name = "last_name"),
+        @FetchAttribute(name = "first_name"),
+        @FetchAttribute(name = "street"),
+        @FetchAttribute(name = "zip"),
+        @FetchAttribute(name = "phone")})
+
+// The unique constraint starts with first_name, so it does not help a search by last name.
 @Table(uniqueConstraints = {@UniqueConstraint(columnNames =
-        {"first_name", "last_name", "phone"})})
+        {"first_name", "last_name", "phone"})},
+        indexes = {@Index(name = "CUSTOMERS_NAME", columnList = "last_name, first_name")})
 
 /** A person, who has, or might, order products from us. */
 public class Customers {
+    /** Name of the fetch group for lists of customers: their names and phone numbers. */
+    public static final String LIST = "list";
+
+    /** Name of the fetch group with all of a customer's columns. */
+    public static final String DETAIL = "detail";
+
     @Id
     @GeneratedValue(strategy=GenerationType.AUTO)
     /** Surrogate key for customer.  We don't want to
@@ -191,16 +245,20 @@ public class Customers {
      */
     @Override
     public boolean equals (Object o) {
+        if (!(o instanceof Customers)) {
+            return false;
+        }
         Customers customer = (Customers) o;
         return this.getCustomer_id() == customer.getCustomer_id();
     }
 
     /**
-     * Hash function to map customer ID, last name, and first name
-     * @return hash map
+     * Hash function on the customer ID, which is all that equals looks at.  Hashing the
+     * names as well would give equal customers different hash codes whenever a name changed.
+     * @return hash code
      */
     @Override
     public int hashCode() {
-        return Objects.hash(this.getCustomer_id(), this.getLast_name(), this.getFirst_name());
+        return Long.hashCode(this.getCustomer_id());
     }
 }
\ No newline at end of file
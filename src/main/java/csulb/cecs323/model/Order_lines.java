@@ -35,15 +35,88 @@ me that would be the case.
                 "WHERE CUSTOMER_ID = ? AND ORDER_DATE = ?",
         resultClass = Order_lines.class
 )
+@NamedNativeQuery(
+        name="ReturnOrderTotal",
+        query = "SELECT SUM(QUANTITY * UNIT_SALE_PRICE) " +
+                "FROM   ORDER_LINES " +
+                "WHERE CUSTOMER_ID = ? AND ORDER_DATE = ?"
+)
+// The sales reports below each return one row per group: the group, the number of order lines,
+// the total quantity and the total revenue, for the order lines dated from ?1 up to, but not
+// including, ?2.  Quantities are summed as BIGINT so that large totals do not overflow.
+@NamedNativeQuery(
+        name="RevenueByProduct",
+        query = "SELECT PRODUCT_UPC, COUNT(*), SUM(CAST(QUANTITY AS BIGINT)), " +
+                "       SUM(QUANTITY * UNIT_SALE_PRICE) " +
+                "FROM   ORDER_LINES " +
+                "WHERE ORDER_DATE >= ? AND ORDER_DATE < ? " +
+                "GROUP BY PRODUCT_UPC " +
+                "ORDER BY 4 DESC"
+)
+@NamedNativeQuery(
+        name="RevenueBySalesPerson",
+        query = "SELECT O.SOLD_BY, COUNT(*), SUM(CAST(OL.QUANTITY AS BIGINT)), " +
+                "       SUM(OL.QUANTITY * OL.UNIT_SALE_PRICE) " +
+                "FROM   ORDER_LINES OL " +
+                "       INNER JOIN ORDERS O " +
+                "       ON OL.CUSTOMER_ID = O.CUSTOMER_ID AND OL.ORDER_DATE = O.ORDER_DATE " +
+                "WHERE OL.ORDER_DATE >= ? AND OL.ORDER_DATE < ? " +
+                "GROUP BY O.SOLD_BY " +
+                "ORDER BY 4 DESC"
+)
+@NamedNativeQuery(
+        name="RevenueByDay",
+        query = "SELECT CAST(ORDER_DATE AS DATE), COUNT(*), SUM(CAST(QUANTITY AS BIGINT)), " +
+                "       SUM(QUANTITY * UNIT_SALE_PRICE) " +
+                "FROM   ORDER_LINES " +
+                "WHERE ORDER_DATE >= ? AND ORDER_DATE < ? " +
+                "GROUP BY CAST(ORDER_DATE AS DATE) " +
+                "ORDER BY 1"
+)
+@NamedQuery(
+        name="OrderLinesForProduct",
+        query = "SELECT ol " +
+                "FROM   Order_lines ol " +
+                "WHERE  ol.product.UPC = :UPC"
+)
+// Every line of every order placed by one customer, with its product fetched in the same statement.
+@NamedQuery(
+        name="OrderLinesForCustomer",
+        query = "SELECT ol " +
+                "FROM   Order_lines ol JOIN FETCH ol.product " +
+                "WHERE  ol.order.customer.customer_id = :customerId " +
+                "ORDER BY ol.order.order_date DESC, ol.product.UPC"
+)
+// Just the columns of ORDER_LINES that the analytics snapshot needs, without joining anything.
+@NamedNativeQuery(
+        name="SnapshotOrderLines",
+        query = "SELECT CUSTOMER_ID, ORDER_DATE, PRODUCT_UPC, QUANTITY, UNIT_SALE_PRICE " +
+                "FROM   ORDER_LINES"
+)
+// One flat row per order line for exporting: just the values, so that no entities are built.
+// The customer_id and order_date come from the line's own key, so CUSTOMERS is not joined in;
+// as JPQL, ol.order.customer.customer_id would join it for every line.
+@NamedNativeQuery(
+        name="ExportOrderLines",
+        query = "SELECT ol.CUSTOMER_ID, ol.ORDER_DATE, o.SOLD_BY, " +
+                "       ol.PRODUCT_UPC, p.PROD_NAME, ol.QUANTITY, ol.UNIT_SALE_PRICE " +
+                "FROM   ORDER_LINES ol " +
+                "JOIN   ORDERS o ON o.CUSTOMER_ID = ol.CUSTOMER_ID AND o.ORDER_DATE = ol.ORDER_DATE " +
+                "JOIN   PRODUCTS p ON p.UPC = ol.PRODUCT_UPC"
+)
+// Not kept in the shared cache, for the same reason as Orders.
+@Cacheable(false)
 @IdClass(Order_lines_pk.class)
+// The primary key starts with the order, so finding every line for a given product needs its own index.
+@Table(indexes = {@Index(name = "ORDER_LINES_PRODUCT", columnList = "product_upc")})
 /** The occurrence of a single Product within a single Order */
 public class Order_lines {
     @Id
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     /** The order that this line belongs to. */
     private Orders order;
     @Id
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     /** The product ordered in this line item of the order. */
     private Products product;
     @Column(nullable=false)
@@ -147,6 +220,7 @@ public class Order_lines {
      * @param o Object which is passed in to check if it equals
      * @return The order which equals the object passed
      */
+    @Override
     public boolean equals (Object o) {
         boolean results = false;
         if (this == o) {
@@ -155,8 +229,8 @@ public class Order_lines {
             results = false;
         } else {
             Order_lines ol = (Order_lines) o;
-            results = this.getOrder().equals (ol.getOrder()) &&
-                    this.getProduct() == ol.getProduct();
+            results = Objects.equals(this.getOrder(), ol.getOrder()) &&
+                    Objects.equals(this.getProduct(), ol.getProduct());
         }
         return results;
     }
@@ -165,8 +239,9 @@ public class Order_lines {
      *Hash function to map order and product
      * @return hash map
      */
-    public int hasCode () {
-        return Objects.hash(this.getOrder(), this.getProduct());
+    @Override
+    public int hashCode () {
+        return 31 * Objects.hashCode(this.getOrder()) + Objects.hashCode(this.getProduct());
     }
 
     /**
@@ -2,7 +2,6 @@ package csulb.cecs323.model;
 
 import javax.persistence.Column;
 import javax.persistence.Id;
-import javax.persistence.criteria.Order;
 import java.io.Serializable;
 import java.util.Objects;
 /*
@@ -38,6 +37,9 @@ public class Order_lines_pk implements Serializable {
     /** One product within this one order */
     private String product;
 
+    /** Cached hash code, 0 until it is first computed.  The setters clear it. */
+    private transient int hash;
+
     /**
      * Default constructor for order_lines_pk
      */
@@ -67,6 +69,7 @@ public class Order_lines_pk implements Serializable {
      */
     public void setOrder(Orders_pk order) {
         this.order = order;
+        this.hash = 0;
     }
 
     /**
@@ -83,6 +86,7 @@ public class Order_lines_pk implements Serializable {
      */
     public void setProduct(String product) {
         this.product = product;
+        this.hash = 0;
     }
 
     /**
@@ -99,8 +103,8 @@ public class Order_lines_pk implements Serializable {
             results = false;
         } else {
             Order_lines_pk olpk = (Order_lines_pk) o;
-            results = this.getOrder().equals(olpk.getOrder()) &&
-                    this.getProduct() == olpk.getProduct();
+            results = Objects.equals(this.getProduct(), olpk.getProduct()) &&
+                    Objects.equals(this.getOrder(), olpk.getOrder());
         }
         return results;
     }
@@ -111,6 +115,11 @@ public class Order_lines_pk implements Serializable {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(this.getOrder(), this.getProduct());
+        int result = hash;
+        if (result == 0) {
+            result = 31 * Objects.hashCode(this.getOrder()) + Objects.hashCode(this.getProduct());
+            hash = result;
+        }
+        return result;
     }
 }
\ No newline at end of file
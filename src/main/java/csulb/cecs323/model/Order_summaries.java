@@ -0,0 +1,139 @@
+package csulb.cecs323.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+@Entity
+@NamedQuery(
+        name = "LastOrderDate",
+        query = "SELECT MAX(o.order_date) " +
+                "FROM   Orders o " +
+                "WHERE  o.customer = :customer"
+)
+/**
+A running total of the orders placed by one Customer.  It is
+updated in the same transaction as the orders themselves, so
+that how much a customer has ordered can be answered by
+reading this one row, rather than every order they ever placed.
+ */
+public class Order_summaries {
+    @Id
+    /** The same key as the customer. */
+    private long customer_id;
+    @MapsId
+    @OneToOne(optional = false)
+    @JoinColumn(name = "customer_id", referencedColumnName = "customer_id")
+    /** The customer whose orders these are. */
+    private Customers customer;
+    @Column(nullable = false)
+    /** How many orders the customer has placed. */
+    private int order_count;
+    @Column(nullable = false)
+    /** The total of every line of every one of those orders. */
+    private double lifetime_spend;
+    /** When the most recent of those orders was placed, or null if there are none. */
+    private LocalDateTime last_order_date;
+
+    public Order_summaries() {}
+
+    /**
+     * A summary for a customer who has not placed any orders yet.
+     * @param customer the customer being summarized
+     */
+    public Order_summaries(Customers customer) {
+        this.customer = customer;
+        this.customer_id = customer.getCustomer_id();
+    }
+
+    /**
+     * Counts one more order.
+     * @param order_date when the order was placed
+     * @param total the total of all of its lines
+     */
+    public void addOrder(LocalDateTime order_date, double total) {
+        this.order_count++;
+        this.lifetime_spend += total;
+        if (this.last_order_date == null || order_date.isAfter(this.last_order_date)) {
+            this.last_order_date = order_date;
+        }
+    }
+
+    /**
+     * Takes back an order that was cancelled.
+     * @param total the total of all of its lines
+     * @param last_order_date when the most recent remaining order was placed, or null if none are left
+     */
+    public void removeOrder(double total, LocalDateTime last_order_date) {
+        this.order_count--;
+        this.lifetime_spend -= total;
+        this.last_order_date = last_order_date;
+    }
+
+    /**
+     * @return customer_id
+     */
+    public long getCustomer_id() {
+        return customer_id;
+    }
+
+    /**
+     * @return customer
+     */
+    public Customers getCustomer() {
+        return customer;
+    }
+
+    /**
+     * @return order_count
+     */
+    public int getOrder_count() {
+        return order_count;
+    }
+
+    /**
+     * @return lifetime_spend
+     */
+    public double getLifetime_spend() {
+        return lifetime_spend;
+    }
+
+    /**
+     * @return last_order_date
+     */
+    public LocalDateTime getLast_order_date() {
+        return last_order_date;
+    }
+
+    @Override
+    public String toString () {
+        return "Order summary: Customer: " + this.customer_id + ", Orders: " + this.order_count +
+                ", Lifetime spend: " + this.lifetime_spend + ", Last order: " + this.last_order_date;
+    }
+
+    @Override
+    public boolean equals (Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Order_summaries)) {
+            return false;
+        }
+        return this.customer_id == ((Order_summaries) o).customer_id;
+    }
+
+    @Override
+    public int hashCode () {
+        return Long.hashCode(this.customer_id);
+    }
+}
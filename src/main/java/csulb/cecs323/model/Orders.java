@@ -16,7 +16,35 @@ import java.util.Objects;
  */
 
 @Entity
+// Not kept in the shared cache.  Orders keep piling up, and each one is read again rarely,
+// through queries that go to the database anyway, so caching them would only use up memory.
+@Cacheable(false)
 @IdClass(Orders_pk.class)
+@NamedQuery(
+        name = "OrdersBetween",
+        query = "SELECT o " +
+                "FROM   Orders o " +
+                "WHERE  o.order_date >= :from AND o.order_date < :to " +
+                "ORDER BY o.order_date"
+)
+@NamedQuery(
+        name = "OrdersSoldBy",
+        query = "SELECT o " +
+                "FROM   Orders o " +
+                "WHERE  o.sold_by = :soldBy " +
+                "ORDER BY o.order_date"
+)
+// Fetches the customer in the same statement, rather than looking each one up afterwards.
+@NamedQuery(
+        name = "OrdersForCustomer",
+        query = "SELECT o " +
+                "FROM   Orders o JOIN FETCH o.customer " +
+                "WHERE  o.customer.customer_id = :customerId " +
+                "ORDER BY o.order_date DESC"
+)
+// A date range is already answered by the primary key, which starts with order_date.
+// Looking orders up by sales person is not, so that gets an index of its own.
+@Table(indexes = {@Index(name = "ORDERS_SOLD_BY", columnList = "sold_by, order_date")})
 /**
 A request by a Customer for a collection of one or more
 Products.  The Order includes a quantity of each Product
@@ -24,7 +52,7 @@ within the order.
  */
 public class Orders {
     @Id
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     // I could easily have left the @JoinColumn annotation out
     @JoinColumn(name="customer_id",
     referencedColumnName = "customer_id")
@@ -105,13 +133,19 @@ public class Orders {
 
     @Override
     public boolean equals (Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Orders)) {
+            return false;
+        }
         Orders order = (Orders) o;
-        return (this.getCustomer().equals(order.getCustomer()) &&
-                this.getOrder_date() == order.getOrder_date());
+        return (Objects.equals(this.getCustomer(), order.getCustomer()) &&
+                Objects.equals(this.getOrder_date(), order.getOrder_date()));
     }
 
     @Override
     public int hashCode () {
-        return Objects.hash(this.getOrder_date(), this.getCustomer());
+        return 31 * Objects.hashCode(this.getCustomer()) + Objects.hashCode(this.getOrder_date());
     }
 }
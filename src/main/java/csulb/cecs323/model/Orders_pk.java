@@ -4,7 +4,7 @@ import javax.persistence.Column;
 import javax.persistence.Id;
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.Objects;
+import java.time.ZoneOffset;
 /*
  * Licensed under the Academic Free License (AFL 3.0).
  *     http://opensource.org/licenses/AFL-3.0
@@ -32,6 +32,13 @@ public class Orders_pk implements Serializable {
     @Column(nullable = false)
     private LocalDateTime order_date;
 
+    /*
+    The hash code is computed the first time it is needed and kept, since the
+    persistence provider may hash the same key many times.  0 means not yet
+    computed.  The setters clear it.
+     */
+    private transient int hash;
+
     public Orders_pk () {}
     /**
      * A function to create an order.
@@ -52,6 +59,7 @@ public class Orders_pk implements Serializable {
 
     public void setCustomer(long customer) {
         this.customer = customer;
+        this.hash = 0;
     }
     /**
      * @return order_date
@@ -62,6 +70,7 @@ public class Orders_pk implements Serializable {
 
     public void setOrder_date(LocalDateTime order_date) {
         this.order_date = order_date;
+        this.hash = 0;
     }
 
     @Override
@@ -78,14 +87,31 @@ public class Orders_pk implements Serializable {
             results = false;
         } else {
             Orders_pk orders_pk = (Orders_pk) o;
+            // Compare the dates by value: two equal dates are rarely the same object.
             results =   this.getCustomer() == orders_pk.getCustomer() &&
-                        this.getOrder_date() == orders_pk.getOrder_date();
+                        (this.getOrder_date() == null ? orders_pk.getOrder_date() == null :
+                                this.getOrder_date().equals(orders_pk.getOrder_date()));
         }
         return results;
     }
 
+    /**
+     * Hashes the key as two longs, the customer id and the order date in seconds since
+     * the epoch, plus the nanoseconds, without boxing or allocating anything.
+     * @return hash code
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(this.getCustomer(), this.getOrder_date());
+        int result = hash;
+        if (result == 0) {
+            long encoded = this.getCustomer() * 31;
+            if (this.getOrder_date() != null) {
+                encoded = encoded * 1_000_003L + this.getOrder_date().toEpochSecond(ZoneOffset.UTC);
+                encoded = encoded * 31 + this.getOrder_date().getNano();
+            }
+            result = Long.hashCode(encoded);
+            hash = result;
+        }
+        return result;
     }
 }
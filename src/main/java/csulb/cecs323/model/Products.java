@@ -1,9 +1,18 @@
 package csulb.cecs323.model;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
+import java.util.Objects;
 /*
  * Licensed under the Academic Free License (AFL 3.0).
  *     http://opensource.org/licenses/AFL-3.0
@@ -17,6 +26,9 @@ import javax.persistence.NamedNativeQuery;
  */
 
 @Entity
+// Kept in the shared cache: the most recently used 10,000 products, for at most 10 minutes.
+@Cacheable
+@Cache(type = CacheType.CACHE, size = 10_000, expiry = 600_000)
 @NamedNativeQuery(
         name="ReturnProduct",
         query = "SELECT * " +
@@ -30,6 +42,29 @@ import javax.persistence.NamedNativeQuery;
                 "FROM   PRODUCTS ",
         resultClass = Products.class
 )
+@NamedQuery(
+        name="ProductsAfter",
+        query = "SELECT p " +
+                "FROM   Products p " +
+                "WHERE  p.UPC > :lastUPC " +
+                "ORDER BY p.UPC"
+)
+// EclipseLink writes the arithmetic in these two out with the values in the SQL when on Derby,
+// so that every UPC and quantity is a new statement for Derby to compile.  Bind them instead.
+@NamedQuery(
+        name="ReserveStock",
+        query = "UPDATE Products p " +
+                "SET    p.units_in_stock = p.units_in_stock - :quantity " +
+                "WHERE  p.UPC = :UPC AND p.units_in_stock >= :quantity",
+        hints = @QueryHint(name = QueryHints.BIND_PARAMETERS, value = HintValues.TRUE)
+)
+@NamedQuery(
+        name="ReleaseStock",
+        query = "UPDATE Products p " +
+                "SET    p.units_in_stock = p.units_in_stock + :quantity " +
+                "WHERE  p.UPC = :UPC",
+        hints = @QueryHint(name = QueryHints.BIND_PARAMETERS, value = HintValues.TRUE)
+)
 /** Something that we stock, that the customer can order. */
 public class Products {
     @Id
@@ -139,6 +174,31 @@ public class Products {
         this.units_in_stock = units_in_stock;
     }
 
+    /**
+     * Two products are the same product if they have the same UPC.
+     * @param o Object which is passed in to check if it equals
+     * @return Whether o is a product with the same UPC
+     */
+    @Override
+    public boolean equals (Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Products)) {
+            return false;
+        }
+        return Objects.equals(this.getUPC(), ((Products) o).getUPC());
+    }
+
+    /**
+     * Hash function on the UPC, which is all that equals looks at.
+     * @return hash code
+     */
+    @Override
+    public int hashCode () {
+        return Objects.hashCode(this.getUPC());
+    }
+
     @Override
     /**
      * A string composed of the product UPC, name, price and quantity on hand
@@ -0,0 +1,5 @@
+CREATE INDEX ORDERS_SOLD_BY ON ORDERS(SOLD_BY, ORDER_DATE)
+
+CREATE INDEX ORDER_LINES_PRODUCT ON ORDER_LINES(PRODUCT_UPC)
+
+CREATE INDEX CUSTOMERS_NAME ON CUSTOMERS(LAST_NAME, FIRST_NAME)
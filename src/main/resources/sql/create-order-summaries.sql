@@ -0,0 +1,5 @@
+CREATE TABLE ORDER_SUMMARIES (CUSTOMER_ID BIGINT NOT NULL, ORDER_COUNT INTEGER NOT NULL, LIFETIME_SPEND FLOAT NOT NULL, LAST_ORDER_DATE TIMESTAMP, PRIMARY KEY (CUSTOMER_ID))
+
+ALTER TABLE ORDER_SUMMARIES ADD CONSTRAINT FK_ORDER_SUMMARIES_CUSTOMER_ID FOREIGN KEY (CUSTOMER_ID) REFERENCES CUSTOMERS (CUSTOMER_ID)
+
+INSERT INTO ORDER_SUMMARIES (CUSTOMER_ID, ORDER_COUNT, LIFETIME_SPEND, LAST_ORDER_DATE) SELECT O.CUSTOMER_ID, COUNT(DISTINCT O.ORDER_DATE), COALESCE(SUM(OL.QUANTITY * OL.UNIT_SALE_PRICE), 0), MAX(O.ORDER_DATE) FROM ORDERS O LEFT OUTER JOIN ORDER_LINES OL ON OL.CUSTOMER_ID = O.CUSTOMER_ID AND OL.ORDER_DATE = O.ORDER_DATE GROUP BY O.CUSTOMER_ID
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Academic Free License (AFL 3.0).
+ *     http://opensource.org/licenses/AFL-3.0
+ *
+ *  This code is distributed to CSULB students in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE, other than educational.
+ *
+ *  2021 David Brown <david.brown@csulb.edu>
+ *
+ */
+
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Order_lines;
+import csulb.cecs323.model.Orders;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how many SQL statements OrderService runs, against an in-memory Derby database with
+ * the seed data in it.  The statements are counted by a SessionEventListener, which EclipseLink
+ * calls before every call that it sends to the database.
+ */
+public class OrderServiceTest {
+    private static EntityManagerFactory factory;
+
+    private static OrderService orderService;
+
+    /**
+     * Counts every call that EclipseLink sends to the database.  EclipseLink creates it from
+     * its class name, so the count has to be static.
+     */
+    public static class StatementCounter extends SessionEventAdapter {
+        static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+        @Override
+        public void preExecuteCall(SessionEvent event) {
+            STATEMENTS.incrementAndGet();
+        }
+    } // End of StatementCounter class
+
+    @BeforeAll
+    static void createDatabase() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:OrderServiceTest;create=true");
+        properties.put("javax.persistence.schema-generation.database.action", "drop-and-create");
+        properties.put(PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS, StatementCounter.class.getName());
+        factory = Persistence.createEntityManagerFactory("CustomerOrders", properties);
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            for (String statement : DatabaseImage.readStatements("sql/seed-data.sql")) {
+                manager.createNativeQuery(statement).executeUpdate();
+            } // end of for loop
+            manager.createNativeQuery("UPDATE PRODUCTS SET UNITS_IN_STOCK = 1000").executeUpdate();
+            manager.getTransaction().commit();
+        } finally {
+            manager.close();
+        } // end of try/finally
+        orderService = new OrderService(factory);
+    } // end of createDatabase method
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    } // end of closeDatabase method
+
+    @Test
+    void orderHistoryIsReadInTwoStatements() {
+        LocalDateTime first = LocalDateTime.of(2021, 3, 1, 9, 0);
+        for (int i = 0; i < 5; i++) {
+            orderService.placeOrder(1, first.plusHours(i), Map.of("2345678", 1, "98763", 2), "Pat");
+        } // end of for loop
+        factory.getCache().evictAll();
+
+        StatementCounter.STATEMENTS.set(0);
+        Map<Orders, List<Order_lines>> history = orderService.getOrderHistory(1);
+        int lines = 0;
+        for (Map.Entry<Orders, List<Order_lines>> order : history.entrySet()) {
+            order.getKey().getCustomer().getLast_name();
+            for (Order_lines line : order.getValue()) {
+                line.getProduct().getProd_name();
+                lines++;
+            } // end of for loop
+        } // end of for loop
+        assertEquals(2, StatementCounter.STATEMENTS.get(), "statements to read the order history");
+        assertEquals(5, history.size());
+        assertEquals(10, lines);
+        assertEquals(first.plusHours(4), history.keySet().iterator().next().getOrder_date(), "newest order first");
+    } // end of orderHistoryIsReadInTwoStatements method
+
+    @Test
+    void emptyOrderHistoryIsReadInOneStatement() {
+        StatementCounter.STATEMENTS.set(0);
+        Map<Orders, List<Order_lines>> history = orderService.getOrderHistory(2);
+        assertTrue(history.isEmpty());
+        assertEquals(1, StatementCounter.STATEMENTS.get(), "statements to read an empty order history");
+    } // end of emptyOrderHistoryIsReadInOneStatement method
+} // End of OrderServiceTest class